@@ -0,0 +1,74 @@
+package com.codevblocks.android.cropmarker.benchmark;
+
+import java.util.Random;
+
+/**
+ * A drag gesture, as a sequence of touch samples, replayed against the marker geometry. The
+ * traces are synthesized from a fixed seed, so every run replays the same gesture: a smooth
+ * finger path sampled at 120 Hz, with sensor jitter, which regularly overshoots the bounds.
+ */
+final class DragTrace {
+
+    static final float VIEW_WIDTH = 1080F;
+    static final float VIEW_HEIGHT = 1920F;
+
+    static final float MARKER_LEFT = 240F;
+    static final float MARKER_TOP = 480F;
+    static final float MARKER_RIGHT = 840F;
+    static final float MARKER_BOTTOM = 1440F;
+
+    /** 2 seconds at 120 Hz */
+    static final int SAMPLES = 240;
+
+    final float[] x;
+    final float[] y;
+
+    private DragTrace(final float[] x, final float[] y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Drags the bottom right corner around the view, past the view bounds and back across the
+     * marker, which exercises both the free and the aspect ratio constrained corner paths.
+     */
+    static DragTrace corner(final long seed) {
+        return trace(seed, MARKER_RIGHT, MARKER_BOTTOM, 0.5F * VIEW_WIDTH, 0.5F * VIEW_HEIGHT, 0.6F * VIEW_WIDTH, 0.6F * VIEW_HEIGHT);
+    }
+
+    /**
+     * Drags the marker area around, mostly pressed against the view bounds.
+     */
+    static DragTrace area(final long seed) {
+        final float centerX = 0.5F * (MARKER_LEFT + MARKER_RIGHT);
+        final float centerY = 0.5F * (MARKER_TOP + MARKER_BOTTOM);
+
+        return trace(seed, centerX, centerY, centerX, centerY, 0.5F * VIEW_WIDTH, 0.5F * VIEW_HEIGHT);
+    }
+
+    private static DragTrace trace(final long seed, final float startX, final float startY,
+                                   final float centerX, final float centerY, final float radiusX, final float radiusY) {
+        final Random random = new Random(seed);
+        final float[] x = new float[SAMPLES];
+        final float[] y = new float[SAMPLES];
+
+        float pathX = startX;
+        float pathY = startY;
+
+        for (int i = 0; i < SAMPLES; ++i) {
+            // Ease from the grab point into a Lissajous path, plus up to 1.5px of jitter
+            final double phase = 2 * Math.PI * i / SAMPLES;
+            final float targetX = centerX + radiusX * (float) Math.sin(2 * phase);
+            final float targetY = centerY + radiusY * (float) Math.sin(3 * phase + 0.5);
+
+            pathX += 0.25F * (targetX - pathX);
+            pathY += 0.25F * (targetY - pathY);
+
+            x[i] = pathX + 3F * (random.nextFloat() - 0.5F);
+            y[i] = pathY + 3F * (random.nextFloat() - 0.5F);
+        }
+
+        return new DragTrace(x, y);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.codevblocks.android.cropmarker.benchmark;
+
+import com.codevblocks.android.cropmarker.geometry.MarkerGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays drag traces against {@link MarkerGeometry}. Every operation is a single touch sample:
+ * a handle move for {@link #drag()} (the constrained corner & area moves) and a hit test plus grab
+ * for {@link #grab()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarkerGeometryBenchmark {
+
+    @Param({ "free", "1:1", "16:9", "9:16", "area" })
+    public String scenario;
+
+    private MarkerGeometry mGeometry;
+    private DragTrace mTrace;
+    private float mGrabX;
+    private float mGrabY;
+
+    @Setup
+    public void setUp() {
+        mGeometry = new MarkerGeometry();
+        mGeometry.setBounds(DragTrace.VIEW_WIDTH, DragTrace.VIEW_HEIGHT);
+        mGeometry.setMinSize(150);
+        mGeometry.setTouchThreshold(90);
+        mGeometry.setAspectRatio(aspectRatio(scenario));
+
+        mTrace = "area".equals(scenario) ? DragTrace.area(42L) : DragTrace.corner(42L);
+
+        reset();
+
+        // The aspect ratio moves the bottom right corner of the initial marker away from the trace
+        // start, so the drag grabs the corner (or the center) where it actually is
+        mGrabX = "area".equals(scenario) ? 0.5F * (mGeometry.getLeft() + mGeometry.getRight()) : mGeometry.getRight();
+        mGrabY = "area".equals(scenario) ? 0.5F * (mGeometry.getTop() + mGeometry.getBottom()) : mGeometry.getBottom();
+
+        if (!mGeometry.grab(mGrabX, mGrabY)) {
+            throw new IllegalStateException("The " + scenario + " drag does not grab the marker");
+        }
+
+        mGeometry.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DragTrace.SAMPLES)
+    public float drag() {
+        reset();
+
+        mGeometry.grab(mGrabX, mGrabY);
+
+        for (int i = 0; i < DragTrace.SAMPLES; ++i) {
+            mGeometry.move(mTrace.x[i], mTrace.y[i]);
+        }
+
+        mGeometry.release();
+
+        return mGeometry.getLeft() + mGeometry.getTop() + mGeometry.getRight() + mGeometry.getBottom();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DragTrace.SAMPLES)
+    public int grab() {
+        int grabbed = 0;
+
+        for (int i = 0; i < DragTrace.SAMPLES; ++i) {
+            if (mGeometry.grab(mTrace.x[i], mTrace.y[i])) {
+                ++grabbed;
+            }
+
+            mGeometry.release();
+        }
+
+        return grabbed;
+    }
+
+    private void reset() {
+        mGeometry.set(DragTrace.MARKER_LEFT, DragTrace.MARKER_TOP, DragTrace.MARKER_RIGHT, DragTrace.MARKER_BOTTOM);
+        mGeometry.constrain();
+    }
+
+    private static float aspectRatio(final String scenario) {
+        switch (scenario) {
+            case "1:1": return 1F;
+            case "16:9": return 16F / 9F;
+            case "9:16": return 9F / 16F;
+            default: return 0F;
+        }
+    }
+
+}
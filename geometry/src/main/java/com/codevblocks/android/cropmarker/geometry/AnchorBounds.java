@@ -0,0 +1,18 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class AnchorBounds extends Bounds {
+
+    private final Point anchor;
+    private final MInt threshold;
+
+    AnchorBounds(final Point anchor, final MInt threshold) {
+        this.anchor = anchor;
+        this.threshold = threshold;
+    }
+
+    @Override public final float left() { return anchor.x.value - threshold.value; }
+    @Override public final float top() { return anchor.y.value - threshold.value; }
+    @Override public final float right() { return anchor.x.value + threshold.value; }
+    @Override public final float bottom() { return anchor.y.value + threshold.value; }
+
+}
@@ -0,0 +1,42 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class AreaTouchHandle extends TouchHandle {
+
+    final MFloat left;
+    final MFloat top;
+    final MFloat right;
+    final MFloat bottom;
+
+    AreaTouchHandle(final MFloat left, final MFloat top, final MFloat right, final MFloat bottom, final Bounds dragBounds) {
+        super(new Point(left, top), new RectBounds(left, top, right, bottom), dragBounds);
+
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    @Override
+    final float grabMatch(final float x, final float y) {
+        if (touchArea.contains(x, y)) {
+            final float deltaX = ((left.value + right.value) * 0.5F) - x;
+            final float deltaY = ((top.value + bottom.value) * 0.5F) - y;
+
+            return deltaX * deltaX + deltaY * deltaY;
+        }
+
+        return Float.POSITIVE_INFINITY;
+    }
+
+    @Override
+    final void moveHandle(final float x, final float y) {
+        final float deltaX = x - left.value;
+        final float deltaY = y - top.value;
+
+        left.value = x;
+        top.value = y;
+        right.value += deltaX;
+        bottom.value += deltaY;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+abstract class Bounds {
+
+    abstract float left();
+    abstract float top();
+    abstract float right();
+    abstract float bottom();
+
+    final boolean contains(final float x, final float y) {
+        return Float.compare(left(), x) <= 0 &&
+                Float.compare(x, right()) <= 0 &&
+                Float.compare(top(), y) <= 0 &&
+                Float.compare(y, bottom()) <= 0;
+    }
+
+}
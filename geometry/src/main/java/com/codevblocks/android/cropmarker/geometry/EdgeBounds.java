@@ -0,0 +1,24 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class EdgeBounds extends Bounds {
+
+    private final boolean horizontal;
+    private final MFloat edge;
+    private final MFloat crossStart;
+    private final MFloat crossEnd;
+    private final MInt threshold;
+
+    EdgeBounds(final boolean horizontal, final MFloat edge, final MFloat crossStart, final MFloat crossEnd, final MInt threshold) {
+        this.horizontal = horizontal;
+        this.edge = edge;
+        this.crossStart = crossStart;
+        this.crossEnd = crossEnd;
+        this.threshold = threshold;
+    }
+
+    @Override public final float left() { return horizontal ? edge.value - threshold.value : crossStart.value; }
+    @Override public final float top() { return horizontal ? crossStart.value : edge.value - threshold.value; }
+    @Override public final float right() { return horizontal ? edge.value + threshold.value : crossEnd.value; }
+    @Override public final float bottom() { return horizontal ? crossEnd.value : edge.value + threshold.value; }
+
+}
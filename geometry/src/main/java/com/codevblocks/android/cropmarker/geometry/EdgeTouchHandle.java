@@ -0,0 +1,133 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class EdgeTouchHandle extends TouchHandle {
+
+    private final boolean mHorizontal;
+    private final int mDirection;
+
+    private final MFloat mEdge;
+    private final MFloat mOpposite;
+    private final MFloat mCrossStart;
+    private final MFloat mCrossEnd;
+
+    private final MInt mMinSize;
+    private final MFloat mAspectRatio;
+    private final MInt mBehavior;
+
+    // The edge coordinate limits & the cross axis scaling computed when the handle is grabbed
+    private float mMinEdge;
+    private float mMaxEdge;
+    private float mCrossPerSize;
+    private float mCrossCenter;
+    private float mCrossMin;
+    private float mCrossMax;
+    private boolean mAspectRatioActive;
+
+    /**
+     * @param horizontal true if the edge moves horizontally (left & right edges)
+     * @param direction -1 if the edge is the lower coordinate (left & top edges), 1 otherwise
+     */
+    EdgeTouchHandle(final boolean horizontal, final int direction,
+                    final MFloat edge, final MFloat opposite, final MFloat crossStart, final MFloat crossEnd,
+                    final MInt touchThreshold, final Bounds dragBounds,
+                    final MInt minSize, final MFloat aspectRatio, final MInt behavior) {
+        super(new Point(), new EdgeBounds(horizontal, edge, crossStart, crossEnd, touchThreshold), dragBounds);
+
+        this.mHorizontal = horizontal;
+        this.mDirection = direction;
+        this.mEdge = edge;
+        this.mOpposite = opposite;
+        this.mCrossStart = crossStart;
+        this.mCrossEnd = crossEnd;
+        this.mMinSize = minSize;
+        this.mAspectRatio = aspectRatio;
+        this.mBehavior = behavior;
+    }
+
+    final void updateAnchor() {
+        final float crossCenter = 0.5F * (mCrossStart.value + mCrossEnd.value);
+
+        anchor.x.value = mHorizontal ? mEdge.value : crossCenter;
+        anchor.y.value = mHorizontal ? crossCenter : mEdge.value;
+    }
+
+    @Override
+    final float grabMatch(final float x, final float y) {
+        updateAnchor();
+        return super.grabMatch(x, y);
+    }
+
+    @Override
+    final boolean grab(final float x, final float y) {
+        updateAnchor();
+
+        final boolean grabbed = super.grab(x, y);
+
+        final float axisMin = mHorizontal ? dragBounds.left() : dragBounds.top();
+        final float axisMax = mHorizontal ? dragBounds.right() : dragBounds.bottom();
+
+        float minSize = mMinSize.value;
+        float maxSize = mDirection < 0 ? mOpposite.value - axisMin : axisMax - mOpposite.value;
+
+        mAspectRatioActive = grabbed && mAspectRatio != null && !Float.isNaN(mAspectRatio.value) && Float.compare(mAspectRatio.value, 0F) > 0;
+
+        if (mAspectRatioActive) {
+            // The cross axis size follows the edge axis size, either growing symmetrically
+            // around the current cross center or from the pinned cross start edge
+            final float crossMin = mHorizontal ? dragBounds.top() : dragBounds.left();
+            final float crossMax = mHorizontal ? dragBounds.bottom() : dragBounds.right();
+
+            mCrossMin = crossMin;
+            mCrossMax = crossMax;
+            mCrossPerSize = mHorizontal ? 1F / mAspectRatio.value : mAspectRatio.value;
+            mCrossCenter = 0.5F * (mCrossStart.value + mCrossEnd.value);
+
+            final float maxCrossSize = mBehavior.value == MarkerGeometry.EDGE_HANDLES_BEHAVIOR_PIN ?
+                    crossMax - mCrossStart.value :
+                    2F * Math.min(mCrossCenter - crossMin, crossMax - mCrossCenter);
+
+            minSize = Math.max(minSize, mMinSize.value / mCrossPerSize);
+            maxSize = Math.min(maxSize, maxCrossSize / mCrossPerSize);
+        }
+
+        if (Float.compare(minSize, maxSize) > 0) {
+            // There is no room to resize, so the edge stays in place
+            minSize = maxSize = (mEdge.value - mOpposite.value) * mDirection;
+        }
+
+        mMinEdge = Math.min(mOpposite.value + mDirection * minSize, mOpposite.value + mDirection * maxSize);
+        mMaxEdge = Math.max(mOpposite.value + mDirection * minSize, mOpposite.value + mDirection * maxSize);
+
+        return grabbed;
+    }
+
+    @Override
+    final void moveHandle(final float x, final float y) {
+        final float edge = Math.min(Math.max(mMinEdge, mHorizontal ? x : y), mMaxEdge);
+
+        mEdge.value = edge;
+
+        if (mAspectRatioActive) {
+            final float crossSize = (edge - mOpposite.value) * mDirection * mCrossPerSize;
+
+            // The max size is derived from the cross bounds through the aspect ratio, which can
+            // be off by a few float ulps on the way back, hence the final clamping
+            if (mBehavior.value == MarkerGeometry.EDGE_HANDLES_BEHAVIOR_PIN) {
+                mCrossEnd.value = Math.min(mCrossStart.value + crossSize, mCrossMax);
+            } else {
+                mCrossStart.value = Math.max(mCrossCenter - 0.5F * crossSize, mCrossMin);
+                mCrossEnd.value = Math.min(mCrossCenter + 0.5F * crossSize, mCrossMax);
+            }
+        }
+
+        updateAnchor();
+    }
+
+    @Override
+    final void release() {
+        super.release();
+
+        mAspectRatioActive = false;
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class MFloat {
+
+    float value;
+
+    MFloat() { this.value = Float.NaN; }
+    MFloat(final float value) { this.value = value; }
+
+}
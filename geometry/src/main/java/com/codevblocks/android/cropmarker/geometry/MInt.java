@@ -0,0 +1,10 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class MInt {
+
+    int value;
+
+    MInt() { this.value = Integer.MIN_VALUE; }
+    MInt(int value) { this.value = value; }
+
+}
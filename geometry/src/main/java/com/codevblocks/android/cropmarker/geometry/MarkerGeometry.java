@@ -0,0 +1,294 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+/**
+ * The crop marker geometry & touch interaction, independent of the Android framework. The marker
+ * rectangle is kept inside the [0, 0, width, height] bounds, at least minSize wide & tall and,
+ * optionally, at a fixed width/height aspect ratio, while its corners, edges or whole area are
+ * dragged. Not thread safe.
+ */
+public final class MarkerGeometry {
+
+    /** Dragging an edge midpoint resizes the marker symmetrically around its center (aspect ratio only) */
+    public static final int EDGE_HANDLES_BEHAVIOR_CENTER = 0;
+    /** Dragging an edge midpoint resizes the marker from its pinned opposite edge (aspect ratio only) */
+    public static final int EDGE_HANDLES_BEHAVIOR_PIN = 1;
+
+    private final MFloat mLeft = new MFloat(0F);
+    private final MFloat mTop = new MFloat(0F);
+    private final MFloat mRight = new MFloat(0F);
+    private final MFloat mBottom = new MFloat(0F);
+
+    private final MFloat mBoundsWidth = new MFloat(0F);
+    private final MFloat mBoundsHeight = new MFloat(0F);
+
+    private final Point mTopLeft = new Point(mLeft, mTop);
+    private final Point mTopRight = new Point(mRight, mTop);
+    private final Point mBottomLeft = new Point(mLeft, mBottom);
+    private final Point mBottomRight = new Point(mRight, mBottom);
+
+    private final MFloat mAspectRatio = new MFloat(0F);
+    private final MInt mMinSize = new MInt(0);
+    private final MInt mTouchThreshold = new MInt(0);
+    private final MInt mEdgeHandlesBehavior = new MInt(EDGE_HANDLES_BEHAVIOR_CENTER);
+    private boolean mEdgeHandles = false;
+
+    private final Bounds mBounds = new RectBounds(new MFloat(0F), new MFloat(0F), mBoundsWidth, mBoundsHeight);
+
+    private final PointTouchHandle mHandleTopLeft = new PointTouchHandle(mTopLeft, mTouchThreshold,
+            new Bounds() {
+                @Override final float left() { return 0F; }
+                @Override final float top() { return 0F; }
+                @Override final float right() { return Math.max(mRight.value - mMinSize.value, left()); }
+                @Override final float bottom() { return Math.max(mBottom.value - mMinSize.value, top()); }
+            },
+            mAspectRatio, mBottomRight);
+
+    private final PointTouchHandle mHandleTopRight = new PointTouchHandle(mTopRight, mTouchThreshold,
+            new Bounds() {
+                @Override final float left() { return Math.min(mLeft.value + mMinSize.value, right()); }
+                @Override final float top() { return 0F; }
+                @Override final float right() { return mBoundsWidth.value; }
+                @Override final float bottom() { return Math.max(mBottom.value - mMinSize.value, top()); }
+            },
+            mAspectRatio, mBottomLeft);
+
+    private final PointTouchHandle mHandleBottomLeft = new PointTouchHandle(mBottomLeft, mTouchThreshold,
+            new Bounds() {
+                @Override final float left() { return 0F; }
+                @Override final float top() { return Math.min(mTop.value + mMinSize.value, bottom()); }
+                @Override final float right() { return Math.max(mRight.value - mMinSize.value, left()); }
+                @Override final float bottom() { return mBoundsHeight.value; }
+            },
+            mAspectRatio, mTopRight);
+
+    private final PointTouchHandle mHandleBottomRight = new PointTouchHandle(mBottomRight, mTouchThreshold,
+            new Bounds() {
+                @Override final float left() { return Math.min(mLeft.value + mMinSize.value, right()); }
+                @Override final float top() { return Math.min(mTop.value + mMinSize.value, bottom()); }
+                @Override final float right() { return mBoundsWidth.value; }
+                @Override final float bottom() { return mBoundsHeight.value; }
+            },
+            mAspectRatio, mTopLeft);
+
+    private final AreaTouchHandle mHandleArea = new AreaTouchHandle(mLeft, mTop, mRight, mBottom,
+            new Bounds() {
+                @Override final float left() { return 0F; }
+                @Override final float top() { return 0F; }
+                @Override final float right() { return left() + (mBoundsWidth.value - left()) - (mRight.value - mLeft.value); }
+                @Override final float bottom() { return top() + (mBoundsHeight.value - top()) - (mBottom.value - mTop.value); }
+            });
+
+    private final EdgeTouchHandle mHandleLeft = new EdgeTouchHandle(true, -1,
+            mLeft, mRight, mTop, mBottom, mTouchThreshold, mBounds,
+            mMinSize, mAspectRatio, mEdgeHandlesBehavior);
+
+    private final EdgeTouchHandle mHandleTop = new EdgeTouchHandle(false, -1,
+            mTop, mBottom, mLeft, mRight, mTouchThreshold, mBounds,
+            mMinSize, mAspectRatio, mEdgeHandlesBehavior);
+
+    private final EdgeTouchHandle mHandleRight = new EdgeTouchHandle(true, 1,
+            mRight, mLeft, mTop, mBottom, mTouchThreshold, mBounds,
+            mMinSize, mAspectRatio, mEdgeHandlesBehavior);
+
+    private final EdgeTouchHandle mHandleBottom = new EdgeTouchHandle(false, 1,
+            mBottom, mTop, mLeft, mRight, mTouchThreshold, mBounds,
+            mMinSize, mAspectRatio, mEdgeHandlesBehavior);
+
+    // Touch handle hit test candidates, indexed by the marker quadrant containing the touch point
+    // (see quadrant()). A touch point is always closer to the corner & edge midpoints of its own
+    // quadrant than to any other ones, so only those and the area handle need to be considered.
+    private final TouchHandle[][] mQuadrantTouchHandles = {
+            { mHandleTopLeft, mHandleArea },
+            { mHandleTopRight, mHandleArea },
+            { mHandleBottomLeft, mHandleArea },
+            { mHandleBottomRight, mHandleArea }
+    };
+
+    private final TouchHandle[][] mQuadrantTouchHandlesWithEdges = {
+            { mHandleTopLeft, mHandleLeft, mHandleTop, mHandleArea },
+            { mHandleTopRight, mHandleRight, mHandleTop, mHandleArea },
+            { mHandleBottomLeft, mHandleLeft, mHandleBottom, mHandleArea },
+            { mHandleBottomRight, mHandleRight, mHandleBottom, mHandleArea }
+    };
+
+    private TouchHandle mActiveTouchHandle = null;
+
+    public float getLeft() {
+        return mLeft.value;
+    }
+
+    public float getTop() {
+        return mTop.value;
+    }
+
+    public float getRight() {
+        return mRight.value;
+    }
+
+    public float getBottom() {
+        return mBottom.value;
+    }
+
+    public float getBoundsWidth() {
+        return mBoundsWidth.value;
+    }
+
+    public float getBoundsHeight() {
+        return mBoundsHeight.value;
+    }
+
+    /**
+     * Sets the size of the area inside which the marker is kept. The marker is not constrained to
+     * the new bounds until the next drag or call to {@link #constrain()}.
+     */
+    public void setBounds(final float width, final float height) {
+        mBoundsWidth.value = width;
+        mBoundsHeight.value = height;
+    }
+
+    public float getAspectRatio() {
+        return mAspectRatio.value;
+    }
+
+    /**
+     * @param aspectRatio the width/height aspect ratio kept by the marker, or 0 for none
+     */
+    public void setAspectRatio(final float aspectRatio) {
+        mAspectRatio.value = aspectRatio;
+    }
+
+    public int getMinSize() {
+        return mMinSize.value;
+    }
+
+    public void setMinSize(final int minSize) {
+        mMinSize.value = minSize;
+    }
+
+    public int getTouchThreshold() {
+        return mTouchThreshold.value;
+    }
+
+    public void setTouchThreshold(final int touchThreshold) {
+        mTouchThreshold.value = touchThreshold;
+    }
+
+    public boolean getEdgeHandles() {
+        return mEdgeHandles;
+    }
+
+    /**
+     * @param edgeHandles true if the edge midpoints can also be grabbed
+     */
+    public void setEdgeHandles(final boolean edgeHandles) {
+        mEdgeHandles = edgeHandles;
+    }
+
+    public int getEdgeHandlesBehavior() {
+        return mEdgeHandlesBehavior.value;
+    }
+
+    public void setEdgeHandlesBehavior(final int edgeHandlesBehavior) {
+        mEdgeHandlesBehavior.value = edgeHandlesBehavior;
+    }
+
+    /**
+     * Sets the marker rectangle as is, without applying any constraint.
+     */
+    public void set(final float left, final float top, final float right, final float bottom) {
+        mLeft.value = left;
+        mTop.value = top;
+        mRight.value = right;
+        mBottom.value = bottom;
+    }
+
+    /**
+     * Moves the top left corner, then the bottom right corner of the marker, as if they had been
+     * dragged to the given position.
+     */
+    public void setMarker(final float left, final float top, final float right, final float bottom) {
+        mHandleTopLeft.grab(mHandleTopLeft.anchor.x.value, mHandleTopLeft.anchor.y.value);
+        mHandleTopLeft.move(left, top);
+        mHandleTopLeft.release();
+
+        mHandleBottomRight.grab(mHandleBottomRight.anchor.x.value, mHandleBottomRight.anchor.y.value);
+        mHandleBottomRight.move(right, bottom);
+        mHandleBottomRight.release();
+    }
+
+    /**
+     * Applies the constraints to the current marker, e.g. once the bounds have changed.
+     */
+    public void constrain() {
+        mHandleBottomRight.grab(mHandleBottomRight.anchor.x.value, mHandleBottomRight.anchor.y.value);
+        mHandleBottomRight.move(mRight.value, mBottom.value);
+        mHandleBottomRight.release();
+    }
+
+    /**
+     * Expands the marker to the whole bounds, within the constraints.
+     */
+    public void reset() {
+        setMarker(0F, 0F, mBoundsWidth.value, mBoundsHeight.value);
+    }
+
+    /**
+     * Grabs the touch handle closest to the touch point, if any is in reach.
+     *
+     * @return true if a touch handle was grabbed
+     */
+    public boolean grab(final float x, final float y) {
+        mActiveTouchHandle = hitTest(x, y);
+
+        if (mActiveTouchHandle != null) {
+            mActiveTouchHandle.grab(x, y);
+        }
+
+        return mActiveTouchHandle != null;
+    }
+
+    public boolean isGrabbed() {
+        return mActiveTouchHandle != null;
+    }
+
+    /**
+     * Drags the grabbed touch handle to the touch point, within the constraints.
+     */
+    public void move(final float x, final float y) {
+        if (mActiveTouchHandle != null) {
+            mActiveTouchHandle.move(x, y);
+        }
+    }
+
+    public void release() {
+        if (mActiveTouchHandle != null) {
+            mActiveTouchHandle.release();
+            mActiveTouchHandle = null;
+        }
+    }
+
+    private TouchHandle hitTest(final float x, final float y) {
+        final TouchHandle[] candidates = (mEdgeHandles ? mQuadrantTouchHandlesWithEdges : mQuadrantTouchHandles)[quadrant(x, y)];
+
+        TouchHandle touchHandle = null;
+        float touchHandleMatch = Float.POSITIVE_INFINITY;
+
+        for (int i = 0; i < candidates.length; ++i) {
+            final float match = candidates[i].grabMatch(x, y);
+
+            if (match < touchHandleMatch) {
+                touchHandle = candidates[i];
+                touchHandleMatch = match;
+            }
+        }
+
+        return touchHandle;
+    }
+
+    private int quadrant(final float x, final float y) {
+        /* 0 = top-left, 1 = top-right, 2 = bottom-left, 3 = bottom-right */
+        return (2 * x < mLeft.value + mRight.value ? 0 : 1) +
+                (2 * y < mTop.value + mBottom.value ? 0 : 2);
+    }
+
+}
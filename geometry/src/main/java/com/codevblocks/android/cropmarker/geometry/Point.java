@@ -0,0 +1,23 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class Point {
+
+    final MFloat x;
+    final MFloat y;
+
+    Point() {
+        this.x = new MFloat();
+        this.y = new MFloat();
+    }
+
+    Point(final MFloat x, final MFloat y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    void set(final float x, final float y) {
+        this.x.value = x;
+        this.y.value = y;
+    }
+
+}
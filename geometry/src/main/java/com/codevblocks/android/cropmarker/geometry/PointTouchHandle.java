@@ -0,0 +1,99 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class PointTouchHandle extends TouchHandle {
+
+    private final MFloat mAspectRatio;
+    private final Point mAspectRatioAnchor;
+
+    // The drag line is defined parametrically as P(t) = anchor + t * direction, where the
+    // aspect ratio anchor point is the line origin and t is the marker height
+    private boolean mDragLineActive;
+    private float mDragLineOriginX;
+    private float mDragLineOriginY;
+    private float mDragLineDirectionX;
+    private float mDragLineDirectionY;
+    private float mDragLineInverseLengthSquared;
+    private float mDragLineMinT;
+    private float mDragLineMaxT;
+
+    PointTouchHandle(final Point point, final MInt touchThreshold, final Bounds dragBounds, final MFloat aspectRatio, final Point aspectRatioAnchor) {
+        super(point, new AnchorBounds(point, touchThreshold), dragBounds);
+
+        this.mAspectRatio = aspectRatio;
+        this.mAspectRatioAnchor = aspectRatioAnchor;
+
+        this.mDragLineActive = false;
+    }
+
+    @Override
+    final boolean grab(float x, float y) {
+        final boolean grabbed = super.grab(x, y);
+
+        mDragLineActive = false;
+
+        if (grabbed && mAspectRatio != null && !Float.isNaN(mAspectRatio.value) && Float.compare(mAspectRatio.value, 0F) > 0) {
+            // In order to keep an aspect ratio, we need to compute a drag line along which we
+            // are allowed to move this touch handle. This line starts from the aspect ratio
+            // anchor point and heads towards this handle's quadrant. A unit step along the
+            // line grows the marker height by 1 and the marker width by the aspect ratio, so
+            // every point on it respects the aspect ratio exactly, whatever its value. The
+            // drag line is then limited by intersecting it with the drag bounds rectangle,
+            // which reduces to an interval of allowed t values.
+
+            // Compute the direction of this handle in relation to the aspect ratio anchor
+            final int handleXDirection = anchor.x.value - mAspectRatioAnchor.x.value < 0 ? -1 : 1;
+            final int handleYDirection = anchor.y.value - mAspectRatioAnchor.y.value < 0 ? -1 : 1;
+
+            mDragLineOriginX = mAspectRatioAnchor.x.value;
+            mDragLineOriginY = mAspectRatioAnchor.y.value;
+            mDragLineDirectionX = handleXDirection * mAspectRatio.value;
+            mDragLineDirectionY = handleYDirection;
+            mDragLineInverseLengthSquared = 1F / (mDragLineDirectionX * mDragLineDirectionX + mDragLineDirectionY * mDragLineDirectionY);
+
+            // Intersect the drag line with the vertical & horizontal drag bounds slabs
+            final float tX1 = (dragBounds.left() - mDragLineOriginX) / mDragLineDirectionX;
+            final float tX2 = (dragBounds.right() - mDragLineOriginX) / mDragLineDirectionX;
+            final float tY1 = (dragBounds.top() - mDragLineOriginY) / mDragLineDirectionY;
+            final float tY2 = (dragBounds.bottom() - mDragLineOriginY) / mDragLineDirectionY;
+
+            mDragLineMinT = Math.max(Math.min(tX1, tX2), Math.min(tY1, tY2));
+            mDragLineMaxT = Math.min(Math.max(tX1, tX2), Math.max(tY1, tY2));
+
+            if (Float.compare(mDragLineMinT, mDragLineMaxT) > 0) {
+                // The drag line does not cross the drag bounds, so the handle stays in place
+                mDragLineMinT = mDragLineMaxT = project(anchor.x.value, anchor.y.value);
+            }
+
+            mDragLineActive = true;
+        }
+
+        return grabbed;
+    }
+
+    @Override
+    final void moveHandle(final float x, final float y) {
+        if (mDragLineActive) {
+            // Project the touch point onto the drag line and limit it to the drag bounds
+            final float t = Math.min(Math.max(mDragLineMinT, project(x, y)), mDragLineMaxT);
+
+            anchor.x.value = mDragLineOriginX + t * mDragLineDirectionX;
+            anchor.y.value = mDragLineOriginY + t * mDragLineDirectionY;
+        } else {
+            anchor.x.value = x;
+            anchor.y.value = y;
+        }
+    }
+
+    @Override
+    final void release() {
+        super.release();
+
+        mDragLineActive = false;
+    }
+
+    private float project(final float x, final float y) {
+        /* t = dot(point - origin, direction) / |direction|^2 */
+        return ((x - mDragLineOriginX) * mDragLineDirectionX + (y - mDragLineOriginY) * mDragLineDirectionY) * mDragLineInverseLengthSquared;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+final class RectBounds extends Bounds {
+
+    private final MFloat left;
+    private final MFloat top;
+    private final MFloat right;
+    private final MFloat bottom;
+
+    RectBounds() {
+        this.left = new MFloat();
+        this.top = new MFloat();
+        this.right = new MFloat();
+        this.bottom = new MFloat();
+    }
+
+    RectBounds(final MFloat left, final MFloat top, final MFloat right, final MFloat bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    @Override public final float left() { return left.value; }
+    @Override public final float top() { return top.value; }
+    @Override public final float right() { return right.value; }
+    @Override public final float bottom() { return bottom.value; }
+
+    final void set(final float left, final float top, final float right, final float bottom) {
+        this.left.value = left;
+        this.top.value = top;
+        this.right.value = right;
+        this.bottom.value = bottom;
+    }
+
+}
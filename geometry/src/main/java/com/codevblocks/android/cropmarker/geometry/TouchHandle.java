@@ -0,0 +1,55 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+abstract class TouchHandle {
+
+    final Point anchor;
+    final Bounds touchArea;
+    final Bounds dragBounds;
+    final Point touchPoint;
+
+    TouchHandle(final Point anchor, final Bounds touchArea, final Bounds dragBounds) {
+        this.anchor = anchor;
+        this.touchArea = touchArea;
+        this.dragBounds = dragBounds;
+        this.touchPoint = new Point(new MFloat(0F), new MFloat(0F));
+    }
+
+    /**
+     * @return the squared distance between the touch point and the handle, or
+     * {@link Float#POSITIVE_INFINITY} if the touch point is outside the touch area
+     */
+    float grabMatch(final float x, final float y) {
+        if (touchArea.contains(x, y)) {
+            final float deltaX = anchor.x.value - x;
+            final float deltaY = anchor.y.value - y;
+
+            return deltaX * deltaX + deltaY * deltaY;
+        }
+
+        return Float.POSITIVE_INFINITY;
+    }
+
+    boolean grab(final float x, final float y) {
+        if (touchArea.contains(x, y)) {
+            touchPoint.x.value = x - anchor.x.value;
+            touchPoint.y.value = y - anchor.y.value;
+            return true;
+        }
+
+        return false;
+    }
+
+    void move(final float x, final float y) {
+        moveHandle(
+                Math.min(Math.max(dragBounds.left(), x - touchPoint.x.value), dragBounds.right()),
+                Math.min(Math.max(dragBounds.top(), y - touchPoint.y.value), dragBounds.bottom()));
+    }
+
+    abstract void moveHandle(float x, float y);
+
+    void release() {
+        touchPoint.x.value = 0F;
+        touchPoint.y.value = 0F;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that grabbing, moving & releasing the touch handles, with and without an aspect ratio,
+ * does not allocate. Relies on the HotSpot per-thread allocation counters.
+ */
+public class MarkerGeometryAllocationTest {
+
+    private static final float WIDTH = 1080F;
+    private static final float HEIGHT = 1920F;
+    private static final int CYCLES = 10000;
+
+    private com.sun.management.ThreadMXBean mThreadMXBean;
+    private long mThreadId;
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+
+        mThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        mThreadId = Thread.currentThread().getId();
+
+        Assume.assumeTrue(mThreadMXBean.isThreadAllocatedMemorySupported());
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void dragWithoutAspectRatioDoesNotAllocate() {
+        assertNoAllocation(newGeometry(0F, false));
+    }
+
+    @Test
+    public void dragWithAspectRatioDoesNotAllocate() {
+        assertNoAllocation(newGeometry(16F / 9F, false));
+    }
+
+    @Test
+    public void dragWithEdgeHandlesDoesNotAllocate() {
+        assertNoAllocation(newGeometry(1F, true));
+    }
+
+    @Test
+    public void setMarkerAndResetDoNotAllocate() {
+        final MarkerGeometry geometry = newGeometry(4F / 3F, false);
+
+        // Warm up, then measure the same calls
+        for (int pass = 0; pass < 2; ++pass) {
+            final long allocatedBytes = allocatedBytes();
+
+            for (int i = 0; i < CYCLES; ++i) {
+                geometry.setMarker(i % 300, i % 500, WIDTH - i % 200, HEIGHT - i % 400);
+                geometry.constrain();
+                geometry.reset();
+            }
+
+            if (pass == 1) {
+                assertEquals(0L, allocatedBytes() - allocatedBytes - measurementOverhead());
+            }
+        }
+    }
+
+    private void assertNoAllocation(final MarkerGeometry geometry) {
+        for (int pass = 0; pass < 2; ++pass) {
+            final long allocatedBytes = allocatedBytes();
+
+            drag(geometry);
+
+            if (pass == 1) {
+                assertEquals(0L, allocatedBytes() - allocatedBytes - measurementOverhead());
+            }
+        }
+    }
+
+    private static void drag(final MarkerGeometry geometry) {
+        for (int i = 0; i < CYCLES; ++i) {
+            geometry.set(240F, 480F, 840F, 1440F);
+
+            // Alternate between the corners, the edge midpoints & the area
+            final float x = (i % 3 == 0) ? 240F : (i % 3 == 1) ? 540F : 840F;
+            final float y = (i % 5 < 2) ? 480F : (i % 5 < 4) ? 960F : 1440F;
+
+            if (geometry.grab(x, y)) {
+                for (int j = 0; j < 16; ++j) {
+                    geometry.move(x + (j - 8) * 37F, y + (8 - j) * 53F);
+                }
+
+                geometry.release();
+            }
+        }
+    }
+
+    private long measurementOverhead() {
+        final long allocatedBytes = allocatedBytes();
+        return allocatedBytes() - allocatedBytes;
+    }
+
+    private long allocatedBytes() {
+        return mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+    }
+
+    private static MarkerGeometry newGeometry(final float aspectRatio, final boolean edgeHandles) {
+        final MarkerGeometry geometry = new MarkerGeometry();
+
+        geometry.setBounds(WIDTH, HEIGHT);
+        geometry.setMinSize(150);
+        geometry.setTouchThreshold(90);
+        geometry.setAspectRatio(aspectRatio);
+        geometry.setEdgeHandles(edgeHandles);
+        geometry.setEdgeHandlesBehavior(MarkerGeometry.EDGE_HANDLES_BEHAVIOR_PIN);
+
+        return geometry;
+    }
+
+}
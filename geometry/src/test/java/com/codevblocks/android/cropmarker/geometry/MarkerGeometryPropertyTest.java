@@ -0,0 +1,150 @@
+package com.codevblocks.android.cropmarker.geometry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays seeded random drags of the corners, edges & area of the marker and checks, after every
+ * move, that the marker keeps its aspect ratio within 1 pixel and stays inside the bounds.
+ */
+@RunWith(Parameterized.class)
+public class MarkerGeometryPropertyTest {
+
+    private static final float WIDTH = 1080F;
+    private static final float HEIGHT = 1920F;
+    private static final int MIN_SIZE = 10;
+    private static final int TOUCH_THRESHOLD = 60;
+
+    private static final int DRAGS = 2000;
+    private static final int MOVES_PER_DRAG = 40;
+
+    // Touch points may overshoot the bounds by this much
+    private static final float OVERSHOOT = 300F;
+
+    // The marker coordinates are floats, which are exact to well under this at these magnitudes
+    private static final float EPSILON = 1E-3F;
+
+    @Parameterized.Parameters(name = "{0},edgeHandles={2}")
+    public static List<Object[]> parameters() {
+        final Object[][] ratios = {
+                { "free", 0F },
+                { "1:1", 1F },
+                { "16:9", 16F / 9F },
+                { "9:16", 9F / 16F },
+                { "32:1", 32F },
+                { "1:32", 1F / 32F }
+        };
+
+        final List<Object[]> parameters = new ArrayList<>();
+
+        for (final Object[] ratio : ratios) {
+            parameters.add(new Object[] { ratio[0], ratio[1], false });
+            parameters.add(new Object[] { ratio[0], ratio[1], true });
+        }
+
+        return parameters;
+    }
+
+    private final String mName;
+    private final float mAspectRatio;
+    private final boolean mEdgeHandles;
+
+    public MarkerGeometryPropertyTest(final String name, final float aspectRatio, final boolean edgeHandles) {
+        this.mName = name;
+        this.mAspectRatio = aspectRatio;
+        this.mEdgeHandles = edgeHandles;
+    }
+
+    @Test
+    public void randomDragsKeepAspectRatioAndBounds() {
+        runDrags(MarkerGeometry.EDGE_HANDLES_BEHAVIOR_CENTER);
+    }
+
+    @Test
+    public void randomDragsWithPinnedEdgesKeepAspectRatioAndBounds() {
+        runDrags(MarkerGeometry.EDGE_HANDLES_BEHAVIOR_PIN);
+    }
+
+    private void runDrags(final int edgeHandlesBehavior) {
+        final Random random = new Random(31L * mName.hashCode() + (mEdgeHandles ? 1 : 0) + 7L * edgeHandlesBehavior);
+
+        final MarkerGeometry geometry = new MarkerGeometry();
+        geometry.setBounds(WIDTH, HEIGHT);
+        geometry.setMinSize(MIN_SIZE);
+        geometry.setTouchThreshold(TOUCH_THRESHOLD);
+        geometry.setAspectRatio(mAspectRatio);
+        geometry.setEdgeHandles(mEdgeHandles);
+        geometry.setEdgeHandlesBehavior(edgeHandlesBehavior);
+        geometry.reset();
+
+        check(geometry, "reset");
+
+        for (int drag = 0; drag < DRAGS; ++drag) {
+            final float left = geometry.getLeft();
+            final float top = geometry.getTop();
+            final float right = geometry.getRight();
+            final float bottom = geometry.getBottom();
+
+            // Grab one of the 9 handle positions (corners, edge midpoints, center), slightly off
+            final int handle = random.nextInt(9);
+            final float grabX = (handle % 3 == 0 ? left : handle % 3 == 1 ? 0.5F * (left + right) : right) + jitter(random);
+            final float grabY = (handle / 3 == 0 ? top : handle / 3 == 1 ? 0.5F * (top + bottom) : bottom) + jitter(random);
+
+            if (!geometry.grab(grabX, grabY)) {
+                continue;
+            }
+
+            float x = grabX;
+            float y = grabY;
+
+            for (int move = 0; move < MOVES_PER_DRAG; ++move) {
+                // Mostly small steps, with occasional jumps anywhere around the bounds
+                if (random.nextInt(10) == 0) {
+                    x = -OVERSHOOT + random.nextFloat() * (WIDTH + 2 * OVERSHOOT);
+                    y = -OVERSHOOT + random.nextFloat() * (HEIGHT + 2 * OVERSHOOT);
+                } else {
+                    x += 60F * (random.nextFloat() - 0.5F);
+                    y += 60F * (random.nextFloat() - 0.5F);
+                }
+
+                geometry.move(x, y);
+
+                check(geometry, "drag " + drag + ", move " + move + " to (" + x + ", " + y + ")");
+            }
+
+            geometry.release();
+        }
+    }
+
+    private static float jitter(final Random random) {
+        return 0.5F * TOUCH_THRESHOLD * (random.nextFloat() - 0.5F);
+    }
+
+    private void check(final MarkerGeometry geometry, final String step) {
+        final float left = geometry.getLeft();
+        final float top = geometry.getTop();
+        final float right = geometry.getRight();
+        final float bottom = geometry.getBottom();
+        final String marker = "[" + left + ", " + top + ", " + right + ", " + bottom + "] after " + step;
+
+        assertTrue("Marker outside of the bounds: " + marker,
+                left >= -EPSILON && top >= -EPSILON && right <= WIDTH + EPSILON && bottom <= HEIGHT + EPSILON);
+        assertTrue("Inverted marker: " + marker, left < right && top < bottom);
+
+        if (mAspectRatio > 0F) {
+            final float width = right - left;
+            final float height = bottom - top;
+
+            assertTrue("Aspect ratio " + mName + " not kept within 1px: " + marker + " (" + width + " x " + height + ")",
+                    Math.abs(width - mAspectRatio * height) <= 1F);
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies one {@link CropSpec} to many images in parallel. The crops run on a bounded pool of
+ * background threads, sized from the available cores and the heap budget, and a crop only starts
+ * decoding once its estimated bitmap size fits into the heap budget. The memory of a crop is
+ * returned to the budget once its bitmap has been delivered to the {@link Listener}.
+ */
+public final class BatchCropper {
+
+    /** Results are delivered as soon as they are available */
+    public static final int ORDER_UNORDERED = 0;
+    /** Results are delivered in the order of the sources */
+    public static final int ORDER_ORDERED = 1;
+
+    private static final long MIN_CROP_BYTES = 8L * 1024 * 1024;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the batch results, on the main thread. Once delivered, the bitmaps are owned by the
+     * listener.
+     */
+    public interface Listener {
+
+        void onCropped(int index, Bitmap bitmap);
+
+        void onCropFailed(int index, Exception exception);
+
+        void onProgress(int completed, int total);
+
+        void onFinished(boolean cancelled);
+
+    }
+
+    private final CropSpec mSpec;
+    private final CropOptions mOptions;
+    private int mOrder;
+    private long mHeapBudget;
+    private int mParallelism;
+
+    public BatchCropper(final CropSpec spec, final CropOptions options) {
+        this.mSpec = spec;
+        this.mOptions = (options != null ? new CropOptions(options) : new CropOptions()).setMask(spec.getMask());
+        this.mOrder = ORDER_UNORDERED;
+        this.mHeapBudget = Runtime.getRuntime().maxMemory() / 4;
+        this.mParallelism = 0;
+    }
+
+    public int getOrder() {
+        return mOrder;
+    }
+
+    public BatchCropper setOrder(final int order) {
+        this.mOrder = order;
+        return this;
+    }
+
+    public long getHeapBudget() {
+        return mHeapBudget;
+    }
+
+    /**
+     * The maximum memory, in bytes, of the cropped bitmaps which are being decoded or waiting to be
+     * delivered at any time. Defaults to a quarter of the maximum heap size.
+     */
+    public BatchCropper setHeapBudget(final long heapBudget) {
+        this.mHeapBudget = Math.max(1, heapBudget);
+        return this;
+    }
+
+    public int getParallelism() {
+        return mParallelism > 0 ? mParallelism : defaultParallelism(mHeapBudget);
+    }
+
+    /**
+     * The number of background threads. A value of 0 sizes the pool from the number of available
+     * cores and the heap budget.
+     */
+    public BatchCropper setParallelism(final int parallelism) {
+        this.mParallelism = Math.max(0, parallelism);
+        return this;
+    }
+
+    /**
+     * Starts cropping the sources. Must be called on the main thread.
+     */
+    public Job start(final List<CropSource> sources, final Listener listener) {
+        final Job job = new Job(new ArrayList<>(sources), listener, getParallelism());
+        job.start();
+        return job;
+    }
+
+    private static int defaultParallelism(final long heapBudget) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(1, Math.min(cores, heapBudget / MIN_CROP_BYTES));
+    }
+
+    public final class Job {
+
+        private final List<CropSource> mSources;
+        private final Listener mListener;
+        private final ExecutorService mExecutor;
+        private final int mJobOrder;
+        private final long mJobHeapBudget;
+
+        private final Object mBudgetLock = new Object();
+        private long mAvailableBytes;
+        private int mNextDelivery;
+
+        private volatile boolean mCancelled = false;
+        private boolean mFinished = false;
+
+        // Main thread state
+        private final Bitmap[] mResults;
+        private final Exception[] mErrors;
+        private final long[] mReservedBytes;
+        private final boolean[] mDone;
+        private int mCompleted = 0;
+
+        private Job(final List<CropSource> sources, final Listener listener, final int parallelism) {
+            this.mSources = sources;
+            this.mListener = listener;
+            this.mJobOrder = mOrder;
+            this.mJobHeapBudget = mHeapBudget;
+            this.mAvailableBytes = mJobHeapBudget;
+            this.mNextDelivery = 0;
+
+            this.mResults = new Bitmap[sources.size()];
+            this.mErrors = new Exception[sources.size()];
+            this.mReservedBytes = new long[sources.size()];
+            this.mDone = new boolean[sources.size()];
+
+            this.mExecutor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger(0);
+
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable, "CropMarker-Batch-" + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        public int getTotal() {
+            return mSources.size();
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Stops the batch. Crops in progress are abandoned and no further results are delivered,
+         * except for {@link Listener#onFinished(boolean)}.
+         */
+        public void cancel() {
+            if (mCancelled) {
+                return;
+            }
+
+            mCancelled = true;
+            mExecutor.shutdownNow();
+
+            synchronized (mBudgetLock) {
+                mBudgetLock.notifyAll();
+            }
+
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    finish(true);
+                }
+            });
+        }
+
+        private void start() {
+            if (mSources.isEmpty()) {
+                mExecutor.shutdown();
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(false);
+                    }
+                });
+                return;
+            }
+
+            for (int i = 0; i < mSources.size(); ++i) {
+                final int index = i;
+
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        crop(index);
+                    }
+                });
+            }
+
+            mExecutor.shutdown();
+        }
+
+        private void crop(final int index) {
+            if (mCancelled) {
+                return;
+            }
+
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            Tracing.beginSection(Tracing.BATCH_CROP);
+            try {
+                cropSource(index);
+            } finally {
+                Tracing.endSection();
+            }
+        }
+
+        private void cropSource(final int index) {
+            final CropSource source = mSources.get(index);
+
+            Bitmap bitmap = null;
+            Exception exception = null;
+            long reservedBytes = 0;
+
+            try {
+                final BitmapRegionDecoder decoder = source.newDecoder();
+
+                try {
+                    final Rect region = RegionCropper.sourceRegion(mSpec.mCropBounds, mSpec.mAspectRatio, mOptions.getOrientation(),
+                            decoder.getWidth(), decoder.getHeight(), new Rect());
+
+                    reservedBytes = acquire(index, RegionCropper.decodedBytes(region, mOptions));
+                    bitmap = RegionCropper.decode(source, decoder, region, mOptions);
+                } finally {
+                    decoder.recycle();
+                }
+            } catch (IOException | RuntimeException e) {
+                exception = e;
+            } catch (OutOfMemoryError e) {
+                // Reported like any other failure, the reservation is released once delivered
+                exception = new IOException("Out of memory while cropping source " + source, e);
+            } catch (InterruptedException e) {
+                release(reservedBytes);
+                return;
+            }
+
+            final Bitmap result = bitmap;
+            final Exception error = exception;
+            final long reserved = reservedBytes;
+
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(index, result, error, reserved);
+                }
+            });
+        }
+
+        private long acquire(final int index, final long bytes) throws InterruptedException {
+            final long reservedBytes = Math.min(bytes, mJobHeapBudget);
+
+            synchronized (mBudgetLock) {
+                // In ordered mode, the next crop to be delivered may always exceed the budget, since
+                // the crops waiting for it to be delivered hold on to their share of the budget
+                while (!mCancelled &&
+                        mAvailableBytes < reservedBytes &&
+                        !(mJobOrder == ORDER_ORDERED && index == mNextDelivery)) {
+                    mBudgetLock.wait();
+                }
+
+                if (mCancelled) {
+                    throw new InterruptedException();
+                }
+
+                mAvailableBytes -= reservedBytes;
+            }
+
+            return reservedBytes;
+        }
+
+        private void release(final long bytes) {
+            if (bytes > 0) {
+                synchronized (mBudgetLock) {
+                    mAvailableBytes += bytes;
+                    mBudgetLock.notifyAll();
+                }
+            }
+        }
+
+        private void deliver(final int index, final Bitmap bitmap, final Exception exception, final long reservedBytes) {
+            if (mCancelled) {
+                recycle(bitmap);
+                release(reservedBytes);
+                return;
+            }
+
+            mResults[index] = bitmap;
+            mErrors[index] = exception;
+            mReservedBytes[index] = reservedBytes;
+            mDone[index] = true;
+
+            if (mJobOrder == ORDER_ORDERED) {
+                int nextDelivery = mNextDelivery;
+
+                while (nextDelivery < mDone.length && mDone[nextDelivery] && !mCancelled) {
+                    dispatch(nextDelivery++);
+                }
+
+                synchronized (mBudgetLock) {
+                    mNextDelivery = nextDelivery;
+                    mBudgetLock.notifyAll();
+                }
+            } else {
+                dispatch(index);
+            }
+        }
+
+        private void dispatch(final int index) {
+            final Bitmap bitmap = mResults[index];
+            final Exception exception = mErrors[index];
+
+            mResults[index] = null;
+            mErrors[index] = null;
+
+            if (exception != null) {
+                mListener.onCropFailed(index, exception);
+            } else {
+                mListener.onCropped(index, bitmap);
+            }
+
+            release(mReservedBytes[index]);
+            mReservedBytes[index] = 0;
+
+            mListener.onProgress(++mCompleted, mSources.size());
+
+            if (mCompleted == mSources.size()) {
+                finish(false);
+            }
+        }
+
+        private void recycle(final Bitmap bitmap) {
+            if (mOptions.getBitmapPool() != null) {
+                mOptions.getBitmapPool().put(bitmap);
+            } else if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+
+        private void finish(final boolean cancelled) {
+            if (cancelled) {
+                // Results stored while waiting for an earlier crop will never be delivered
+                for (int i = 0; i < mResults.length; ++i) {
+                    recycle(mResults[i]);
+                    release(mReservedBytes[i]);
+
+                    mResults[i] = null;
+                    mErrors[i] = null;
+                    mReservedBytes[i] = 0;
+                }
+            }
+
+            if (!mFinished) {
+                mFinished = true;
+                mListener.onFinished(cancelled);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.util.LongSparseArray;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * A pool of mutable bitmaps which can be reused as {@link android.graphics.BitmapFactory.Options#inBitmap},
+ * keyed by width, height and config, with least recently used eviction once the pooled bitmaps
+ * exceed a byte budget. It also recycles the decoder {@link android.graphics.BitmapFactory.Options#inTempStorage}
+ * buffers. A single pool can be shared by any number of {@link CropMarker} instances and crops
+ * (see {@link CropMarker#setBitmapPool(BitmapPool)} and {@link CropOptions#setBitmapPool(BitmapPool)}).
+ * All methods are thread safe.
+ */
+public final class BitmapPool {
+
+    private static final int TEMP_STORAGE_SIZE = 16 * 1024;
+    private static final int MAX_TEMP_STORAGE_BUFFERS = 4;
+
+    private final long mMaxBytes;
+    private long mBytes;
+
+    private final LongSparseArray<ArrayDeque<Bitmap>> mGroups = new LongSparseArray<>();
+    // Iterates from the least to the most recently pooled bitmap
+    private final LinkedHashSet<Bitmap> mLru = new LinkedHashSet<>();
+    private final ArrayDeque<byte[]> mTempStorage = new ArrayDeque<>();
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * @param maxBytes the maximum total size, in bytes, of the pooled bitmaps
+     */
+    public BitmapPool(final long maxBytes) {
+        this.mMaxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * @return a pooled bitmap of the exact width, height and config, with undefined content, or null
+     * if there is none
+     */
+    public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        final ArrayDeque<Bitmap> group = mGroups.get(key(width, height, config));
+        final Bitmap bitmap = group != null ? group.pollLast() : null;
+
+        if (bitmap != null) {
+            mLru.remove(bitmap);
+            mBytes -= bytes(bitmap);
+            ++mHitCount;
+        } else {
+            ++mMissCount;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * @return a pooled bitmap of the exact width, height and config, or a new one if there is none.
+     * The content of a pooled bitmap is undefined.
+     */
+    public Bitmap getOrCreate(final int width, final int height, final Bitmap.Config config) {
+        final Bitmap bitmap = get(width, height, config);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not use the bitmap afterwards. Immutable or
+     * recycled bitmaps are ignored.
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null || mLru.contains(bitmap)) {
+            return;
+        }
+
+        final long bytes = bytes(bitmap);
+
+        if (bytes > mMaxBytes) {
+            bitmap.recycle();
+            ++mEvictionCount;
+            return;
+        }
+
+        final long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> group = mGroups.get(key);
+
+        if (group == null) {
+            group = new ArrayDeque<>();
+            mGroups.put(key, group);
+        }
+
+        group.addLast(bitmap);
+        mLru.add(bitmap);
+        mBytes += bytes;
+
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Evicts (and recycles) the least recently pooled bitmaps until the pooled bitmaps fit into the
+     * given size.
+     */
+    public synchronized void trimToSize(final long maxBytes) {
+        final Iterator<Bitmap> iterator = mLru.iterator();
+
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            final Bitmap bitmap = iterator.next();
+            iterator.remove();
+
+            final ArrayDeque<Bitmap> group = mGroups.get(key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()));
+            if (group != null) {
+                group.remove(bitmap);
+            }
+
+            mBytes -= bytes(bitmap);
+            ++mEvictionCount;
+
+            bitmap.recycle();
+        }
+    }
+
+    public void clear() {
+        trimToSize(0);
+
+        synchronized (this) {
+            mTempStorage.clear();
+        }
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return a buffer to be used as {@link android.graphics.BitmapFactory.Options#inTempStorage}
+     */
+    public synchronized byte[] acquireTempStorage() {
+        final byte[] tempStorage = mTempStorage.pollLast();
+        return tempStorage != null ? tempStorage : new byte[TEMP_STORAGE_SIZE];
+    }
+
+    public synchronized void releaseTempStorage(final byte[] tempStorage) {
+        if (tempStorage != null && tempStorage.length == TEMP_STORAGE_SIZE && mTempStorage.size() < MAX_TEMP_STORAGE_BUFFERS) {
+            mTempStorage.addLast(tempStorage);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{bytes=" + mBytes + "/" + mMaxBytes +
+                ", hits=" + mHitCount +
+                ", misses=" + mMissCount +
+                ", evictions=" + mEvictionCount + "}";
+    }
+
+    private static long key(final int width, final int height, final Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+
+    private static long bytes(final Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+}
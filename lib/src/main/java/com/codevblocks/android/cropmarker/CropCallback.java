@@ -0,0 +1,14 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+
+/**
+ * Receives the result of an asynchronous crop, on the main thread.
+ */
+public interface CropCallback {
+
+    void onCropped(Bitmap bitmap);
+
+    void onCropFailed(Exception exception);
+
+}
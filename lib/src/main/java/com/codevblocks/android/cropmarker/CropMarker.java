@@ -1,25 +1,34 @@
 package com.codevblocks.android.cropmarker;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PointF;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Region;
+import android.graphics.RenderNode;
 import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.Arrays;
-import java.util.List;
+import com.codevblocks.android.cropmarker.geometry.MarkerGeometry;
+
+import java.util.concurrent.Future;
 
 public class CropMarker extends View {
 
@@ -30,6 +39,25 @@ public class CropMarker extends View {
     public static final int GRID_LINES_BEHAVIOR_TOUCH = 1;
     public static final int GRID_LINES_BEHAVIOR_ALWAYS = 2;
 
+    public static final int RENDER_MODE_DIRECT = 0;
+    /**
+     * Records the grid lines and the marker stroke once and replays them while the marker is moved.
+     * Only takes effect on API 29+ with a hardware accelerated canvas, otherwise it behaves exactly
+     * like {@link #RENDER_MODE_DIRECT}.
+     */
+    public static final int RENDER_MODE_CACHED = 1;
+
+    public static final int DRAG_SMOOTHING_NONE = 0;
+    public static final int DRAG_SMOOTHING_SMOOTH = 1;
+    public static final int DRAG_SMOOTHING_PREDICT = 2;
+
+    public static final int EDGE_TOUCH_HANDLES_BEHAVIOR_CENTER = MarkerGeometry.EDGE_HANDLES_BEHAVIOR_CENTER;
+    public static final int EDGE_TOUCH_HANDLES_BEHAVIOR_PIN = MarkerGeometry.EDGE_HANDLES_BEHAVIOR_PIN;
+
+    public static final int CROP_CHANGE_DISPATCH_EVENT = 0;
+    public static final int CROP_CHANGE_DISPATCH_FRAME = 1;
+    public static final int CROP_CHANGE_DISPATCH_INTERVAL = 2;
+
     private static final boolean DEFAULT_ENABLED = false;
     private static final float DEFAULT_ASPECT_RATIO = Float.NaN;
     private static final float DEFAULT_MIN_SIZE_DP = 50;
@@ -52,6 +80,15 @@ public class CropMarker extends View {
     private static final int DEFAULT_GRID_LINES_WIDTH_DP = 1;
     private static final int DEFAULT_GRID_LINES_DASH_WIDTH_DP = 0;
     private static final int DEFAULT_GRID_LINES_DASH_GAP_DP = 0;
+    private static final int DEFAULT_RENDER_MODE = RENDER_MODE_DIRECT;
+    private static final int DEFAULT_DRAG_SMOOTHING = DRAG_SMOOTHING_NONE;
+    private static final boolean DEFAULT_EDGE_TOUCH_HANDLES = false;
+    private static final int DEFAULT_EDGE_TOUCH_HANDLES_BEHAVIOR = EDGE_TOUCH_HANDLES_BEHAVIOR_CENTER;
+    private static final int DEFAULT_CROP_CHANGE_DISPATCH = CROP_CHANGE_DISPATCH_EVENT;
+    private static final int DEFAULT_CROP_CHANGE_INTERVAL_MS = 100;
+
+    private static final float DRAG_SMOOTHING_FACTOR = 0.5F;
+    private static final float DRAG_PREDICTION_MS = 8F;
 
     private float mAspectRatio;
     private int mMinSize;
@@ -75,79 +112,88 @@ public class CropMarker extends View {
     private int mGridLinesWidth;
     private int mGridLinesDashWidth;
     private int mGridLinesDashGap;
+    private int mRenderMode;
+    private int mDragSmoothing;
+    private boolean mEdgeTouchHandles;
+    private int mEdgeTouchHandlesBehavior;
+    private int mCropChangeDispatch;
+    private int mCropChangeInterval;
+    private BitmapPool mBitmapPool;
+
+    private final MarkerGeometry mGeometry = new MarkerGeometry();
 
-    private final MInt mMarkerLeft = new MInt(0);
-    private final MInt mMarkerTop = new MInt(0);
-    private final MInt mMarkerRight = new MInt(0);
-    private final MInt mMarkerBottom = new MInt(0);
-
-    private final Point mMarkerTopLeft = new Point(mMarkerLeft, mMarkerTop);
-    private final Point mMarkerTopRight = new Point(mMarkerRight, mMarkerTop);
-    private final Point mMarkerBottomLeft = new Point(mMarkerLeft, mMarkerBottom);
-    private final Point mMarkerBottomRight = new Point(mMarkerRight, mMarkerBottom);
-
-    private final MFloat mAspectRatioRef = new MFloat(0F);
-    private final MInt mMinSizeRef = new MInt(0);
-    private final MInt mTouchThresholdRef = new MInt(0);
-
-    private final PointTouchHandle mMarkerHandleTopLeft = new PointTouchHandle(mMarkerTopLeft, mTouchThresholdRef,
-            new Bounds() {
-                @Override final int left() { return 0; }
-                @Override final int top() { return 0; }
-                @Override final int right() { return Math.max(mMarkerRight.value - mMinSizeRef.value, left()); }
-                @Override final int bottom() { return Math.max(mMarkerBottom.value - mMinSizeRef.value, top()); }
-            },
-            mAspectRatioRef, mMarkerBottomRight);
-
-    private final PointTouchHandle mMarkerHandleTopRight = new PointTouchHandle(mMarkerTopRight, mTouchThresholdRef,
-            new Bounds() {
-                @Override final int left() { return Math.min(mMarkerLeft.value + mMinSizeRef.value, right()); }
-                @Override final int top() { return 0; }
-                @Override final int right() { return getWidth(); }
-                @Override final int bottom() { return Math.max(mMarkerBottom.value - mMinSizeRef.value, top()); }
-            },
-            mAspectRatioRef, mMarkerBottomLeft);
-
-    private final PointTouchHandle mMarkerHandleBottomLeft = new PointTouchHandle(mMarkerBottomLeft, mTouchThresholdRef,
-            new Bounds() {
-                @Override final int left() { return 0; }
-                @Override final int top() { return Math.min(mMarkerTop.value + mMinSizeRef.value, bottom()); }
-                @Override final int right() { return Math.max(mMarkerRight.value - mMinSizeRef.value, left()); }
-                @Override final int bottom() { return getHeight(); }
-            },
-            mAspectRatioRef, mMarkerTopRight);
-
-    private final PointTouchHandle mMarkerHandleBottomRight = new PointTouchHandle(mMarkerBottomRight, mTouchThresholdRef,
-            new Bounds() {
-                @Override final int left() { return Math.min(mMarkerLeft.value + mMinSizeRef.value, right()); }
-                @Override final int top() { return Math.min(mMarkerTop.value + mMinSizeRef.value, bottom()); }
-                @Override final int right() { return getWidth(); }
-                @Override final int bottom() { return getHeight(); }
-            },
-            mAspectRatioRef, mMarkerTopLeft);
-
-    private final AreaTouchHandle mMarkerHandleArea = new AreaTouchHandle(mMarkerLeft, mMarkerTop, mMarkerRight, mMarkerBottom,
-            new Bounds() {
-                @Override final int left() { return 0; }
-                @Override final int top() { return 0; }
-                @Override final int right() { return left() + (getWidth() - left()) - (mMarkerRight.value - mMarkerLeft.value); }
-                @Override final int bottom() { return top() + (getHeight() - top()) - (mMarkerBottom.value - mMarkerTop.value); }
-            });
-
-    private final List<TouchHandle> mMarkerHandles = Arrays.asList(
-            mMarkerHandleTopLeft,
-            mMarkerHandleTopRight,
-            mMarkerHandleBottomLeft,
-            mMarkerHandleBottomRight,
-            mMarkerHandleArea
-    );
+    // RELATIVE crop bounds (restored or set) waiting for the view to be laid out
+    private final RectF mPendingCropBounds = new RectF();
+    private boolean mCropBoundsPending = false;
 
     private int mActiveTouchPointerId = MotionEvent.INVALID_POINTER_ID;
-    private TouchHandle mActiveTouchHandle = null;
 
+    // The latest raw drag sample and the (smoothed or predicted) drag target applied on the next frame
+    private float mDragSampleX;
+    private float mDragSampleY;
+    private long mDragSampleTime;
+    private float mDragVelocityX;
+    private float mDragVelocityY;
+    private float mDragTargetX;
+    private float mDragTargetY;
+    private boolean mDragFramePending = false;
+
+    private final Choreographer.FrameCallback mDragFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mDragFramePending = false;
+
+            if (mGeometry.isGrabbed()) {
+                Tracing.beginSection(Tracing.DRAG_FRAME);
+                try {
+                    mGeometry.move(mDragTargetX, mDragTargetY);
+                    invalidateMarker();
+                    notifyCropChanged(true, true);
+                } finally {
+                    Tracing.endSection();
+                }
+            }
+        }
+    };
+
+    private OnCropChangeListener mOnCropChangeListener;
+    private RectF mCropChangeBounds;
+    // True if any of the changes coalesced since the last dispatch comes from a drag
+    private boolean mCropChangeFromUser;
+    private boolean mCropChangePending = false;
+    private long mCropChangeDispatchTime;
+
+    // Dispatch the coalesced crop changes, on the next frame or once the interval has elapsed
+    private final Choreographer.FrameCallback mCropChangeFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatchCropChanged();
+        }
+    };
+
+    private final Runnable mCropChangeIntervalCallback = new Runnable() {
+        @Override
+        public void run() {
+            dispatchCropChanged();
+        }
+    };
+
+    private MetricsListener mMetricsListener;
+    private CropMetrics mMetrics;
+    private int mFrameTouchEvents = 0;
+
+    private boolean mGeometryDirty = true;
+    private boolean mDecorationDirty = true;
+    private DecorationRenderNode mDecorationRenderNode;
+    private final Rect mDrawnMarkerRect = new Rect();
+    private final Rect mDirtyRect = new Rect();
     private final Path mMaskPath = new Path();
+    private final Path mOverlayPath = new Path();
     private final RectF mCropDrawRect = new RectF();
     private final RectF mTouchHandlesRect = new RectF();
+    private final RectF mImageCropRect = new RectF();
+    private float[] mGridLinesPoints = new float[0];
+    private final float[] mTouchHandleLinesPoints = new float[48];
     private final Paint mPaint = new Paint();
     private DashPathEffect mMarkerStrokeDashPathEffect;
     private DashPathEffect mGridLinesDashPathEffect;
@@ -187,6 +233,17 @@ public class CropMarker extends View {
         this.mGridLinesWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_GRID_LINES_WIDTH_DP, displayMetrics);
         this.mGridLinesDashWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_GRID_LINES_DASH_WIDTH_DP, displayMetrics);
         this.mGridLinesDashGap = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_GRID_LINES_DASH_GAP_DP, displayMetrics);
+        this.mRenderMode = DEFAULT_RENDER_MODE;
+        this.mDragSmoothing = DEFAULT_DRAG_SMOOTHING;
+        this.mEdgeTouchHandles = DEFAULT_EDGE_TOUCH_HANDLES;
+        this.mEdgeTouchHandlesBehavior = DEFAULT_EDGE_TOUCH_HANDLES_BEHAVIOR;
+        this.mCropChangeDispatch = DEFAULT_CROP_CHANGE_DISPATCH;
+        this.mCropChangeInterval = DEFAULT_CROP_CHANGE_INTERVAL_MS;
+
+        float markerLeft = 0F;
+        float markerTop = 0F;
+        float markerRight = 0F;
+        float markerBottom = 0F;
 
         final TypedArray typedArray = attrs != null ? context.getTheme().obtainStyledAttributes(attrs, R.styleable.CropMarker, 0, 0) : null;
 
@@ -194,10 +251,10 @@ public class CropMarker extends View {
             try {
                 setEnabled(typedArray.getBoolean(R.styleable.CropMarker_enabled, DEFAULT_ENABLED));
 
-                this.mMarkerLeft.value = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_left, mMarkerLeft.value));
-                this.mMarkerTop.value = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_top, mMarkerTop.value));
-                this.mMarkerRight.value = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_right, mMarkerRight.value));
-                this.mMarkerBottom.value = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_bottom, mMarkerBottom.value));
+                markerLeft = Math.max(0F, typedArray.getDimension(R.styleable.CropMarker_left, markerLeft));
+                markerTop = Math.max(0F, typedArray.getDimension(R.styleable.CropMarker_top, markerTop));
+                markerRight = Math.max(0F, typedArray.getDimension(R.styleable.CropMarker_right, markerRight));
+                markerBottom = Math.max(0F, typedArray.getDimension(R.styleable.CropMarker_bottom, markerBottom));
 
                 this.mAspectRatio = typedArray.getFloat(R.styleable.CropMarker_aspectRatio, mAspectRatio);
                 this.mMinSize = Math.max(0 ,typedArray.getDimensionPixelSize(R.styleable.CropMarker_minSize, mMinSize));
@@ -222,19 +279,28 @@ public class CropMarker extends View {
                 this.mGridLinesWidth = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_gridLinesWidth, mGridLinesWidth));
                 this.mGridLinesDashWidth = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_gridLinesDashWidth, mGridLinesDashWidth));
                 this.mGridLinesDashGap = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.CropMarker_gridLinesDashGap, mGridLinesDashGap));
+                setRenderMode(typedArray.getInteger(R.styleable.CropMarker_renderMode, mRenderMode));
+                setDragSmoothing(typedArray.getInteger(R.styleable.CropMarker_dragSmoothing, mDragSmoothing));
+                this.mEdgeTouchHandles = typedArray.getBoolean(R.styleable.CropMarker_edgeTouchHandles, mEdgeTouchHandles);
+                this.mEdgeTouchHandlesBehavior = typedArray.getInteger(R.styleable.CropMarker_edgeTouchHandlesBehavior, mEdgeTouchHandlesBehavior);
+                this.mCropChangeDispatch = typedArray.getInteger(R.styleable.CropMarker_cropChangeDispatch, mCropChangeDispatch);
+                this.mCropChangeInterval = Math.max(0, typedArray.getInteger(R.styleable.CropMarker_cropChangeInterval, mCropChangeInterval));
             } finally {
                 typedArray.recycle();
             }
         }
 
-        this.mMarkerLeft.value = Math.max(0, mMarkerLeft.value);
-        this.mMarkerTop.value = Math.max(0, mMarkerTop.value);
-        this.mMarkerRight.value = Math.max(mMarkerLeft.value + mMinSize, mMarkerRight.value);
-        this.mMarkerBottom.value = Math.max(mMarkerTop.value + mMinSize, mMarkerBottom.value);
+        markerLeft = Math.max(0F, markerLeft);
+        markerTop = Math.max(0F, markerTop);
+        markerRight = Math.max(markerLeft + mMinSize, markerRight);
+        markerBottom = Math.max(markerTop + mMinSize, markerBottom);
 
-        this.mAspectRatioRef.value = mAspectRatio;
-        this.mMinSizeRef.value = mMinSize;
-        this.mTouchThresholdRef.value = mTouchThreshold;
+        this.mGeometry.set(markerLeft, markerTop, markerRight, markerBottom);
+        this.mGeometry.setAspectRatio(mAspectRatio);
+        this.mGeometry.setMinSize(mMinSize);
+        this.mGeometry.setTouchThreshold(mTouchThreshold);
+        this.mGeometry.setEdgeHandles(mEdgeTouchHandles);
+        this.mGeometry.setEdgeHandlesBehavior(mEdgeTouchHandlesBehavior);
 
         this.mMarkerStrokeDashPathEffect = (mMarkerStrokeDashWidth > 0 && mMarkerStrokeDashGap > 0) ?
                 new DashPathEffect(new float[] { mMarkerStrokeDashWidth, mMarkerStrokeDashGap }, 0F): null;
@@ -245,9 +311,22 @@ public class CropMarker extends View {
         addOnLayoutChangeListener(new OnLayoutChangeListener() {
             @Override
             public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
-                mMarkerHandleBottomRight.grab(mMarkerHandleBottomRight.anchor.x.value, mMarkerHandleBottomRight.anchor.y.value);
-                mMarkerHandleBottomRight.move(mMarkerRight.value, mMarkerBottom.value);
-                mMarkerHandleBottomRight.release();
+                mGeometry.setBounds(right - left, bottom - top);
+
+                if (mCropBoundsPending && right > left && bottom > top) {
+                    setGeometry(mPendingCropBounds, right - left, bottom - top);
+                    mCropBoundsPending = false;
+                }
+
+                mGeometry.constrain();
+
+                mGeometryDirty = true;
+                mDecorationDirty = true;
+
+                // The relative crop bounds only change with the size of the view
+                if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                    notifyCropChanged(false, false);
+                }
             }
         });
     }
@@ -258,266 +337,572 @@ public class CropMarker extends View {
             return false;
         }
 
+        final long startTime = mMetricsListener != null ? System.nanoTime() : 0L;
         final int action = event.getActionMasked();
 
         if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
-            if (mActiveTouchPointerId == MotionEvent.INVALID_POINTER_ID) {
-                final int pointerIndex = event.getActionIndex();
-                final int pointerId = event.getPointerId(pointerIndex);
-
-                final int eventX = Math.round(event.getX(pointerIndex));
-                final int eventY = Math.round(event.getY(pointerIndex));
-
-                TouchHandle grabbedTouchHandle = null;
-                double grabbedTouchHandleMatch = Double.MAX_VALUE;
-
-                double touchHandleMatch;
-                for (TouchHandle touchHandle : mMarkerHandles) {
-                    touchHandleMatch = touchHandle.grabMatch(eventX, eventY);
-                    if (Double.compare(touchHandleMatch, grabbedTouchHandleMatch) < 0) {
-                        grabbedTouchHandle = touchHandle;
-                        grabbedTouchHandleMatch = touchHandleMatch;
-                    }
-                }
-
-                if (grabbedTouchHandle != null) {
-                    mActiveTouchPointerId = pointerId;
-                    mActiveTouchHandle = grabbedTouchHandle;
-                    mActiveTouchHandle.grab(eventX, eventY);
-                }
+            Tracing.beginSection(Tracing.TOUCH_DOWN);
+            try {
+                onTouchDown(event);
+            } finally {
+                Tracing.endSection();
             }
         } else if (action == MotionEvent.ACTION_MOVE) {
-            if (mActiveTouchPointerId != MotionEvent.INVALID_POINTER_ID && mActiveTouchHandle != null) {
-                final int pointerIndex = event.findPointerIndex(mActiveTouchPointerId);
-
-                mActiveTouchHandle.move(
-                        Math.round(event.getX(pointerIndex)),
-                        Math.round(event.getY(pointerIndex))
-                );
-
-                invalidate();
+            Tracing.beginSection(Tracing.TOUCH_MOVE);
+            try {
+                onTouchMove(event);
+            } finally {
+                Tracing.endSection();
             }
         } else if (action == MotionEvent.ACTION_UP ||
                 action == MotionEvent.ACTION_POINTER_UP ||
                 action == MotionEvent.ACTION_OUTSIDE ||
                 action == MotionEvent.ACTION_CANCEL) {
-            if (mActiveTouchPointerId != MotionEvent.INVALID_POINTER_ID && mActiveTouchHandle != null) {
-                if (mActiveTouchPointerId == event.getPointerId(event.getActionIndex())) {
-                    mActiveTouchPointerId = MotionEvent.INVALID_POINTER_ID;
-                    mActiveTouchHandle.release();
-                    mActiveTouchHandle = null;
+            Tracing.beginSection(Tracing.TOUCH_UP);
+            try {
+                onTouchUp(event);
+            } finally {
+                Tracing.endSection();
+            }
+        }
+
+        if (mMetricsListener != null) {
+            mMetrics.getTouchTime().record(System.nanoTime() - startTime);
+            ++mFrameTouchEvents;
+        }
+
+        return true;
+    }
+
+    private void onTouchDown(final MotionEvent event) {
+        if (mActiveTouchPointerId == MotionEvent.INVALID_POINTER_ID) {
+            final int pointerIndex = event.getActionIndex();
+            final int pointerId = event.getPointerId(pointerIndex);
+
+            final float eventX = event.getX(pointerIndex);
+            final float eventY = event.getY(pointerIndex);
+
+            final boolean grabbed;
+
+            Tracing.beginSection(Tracing.GRAB);
+            try {
+                grabbed = mGeometry.grab(eventX, eventY);
+            } finally {
+                Tracing.endSection();
+            }
+
+            if (grabbed) {
+                mActiveTouchPointerId = pointerId;
 
-                    invalidate();
+                mDragSampleX = mDragTargetX = event.getX(pointerIndex);
+                mDragSampleY = mDragTargetY = event.getY(pointerIndex);
+                mDragSampleTime = event.getEventTime();
+                mDragVelocityX = 0F;
+                mDragVelocityY = 0F;
+
+                if (mGridLinesBehavior == GRID_LINES_BEHAVIOR_TOUCH) {
+                    invalidateDecoration();
+                }
+
+                if (mOnCropChangeListener != null && getCropBounds(mCropChangeBounds) != null) {
+                    mOnCropChangeListener.onCropChangeStarted(this, mCropChangeBounds);
                 }
             }
         }
+    }
 
-        return true;
+    private void onTouchMove(final MotionEvent event) {
+        if (mActiveTouchPointerId != MotionEvent.INVALID_POINTER_ID && mGeometry.isGrabbed()) {
+            final int pointerIndex = event.findPointerIndex(mActiveTouchPointerId);
+
+            // The historical samples batched into this event only matter when filtering the drag
+            if (mDragSmoothing != DRAG_SMOOTHING_NONE) {
+                for (int h = 0, historySize = event.getHistorySize(); h < historySize; ++h) {
+                    addDragSample(event.getHistoricalX(pointerIndex, h), event.getHistoricalY(pointerIndex, h), event.getHistoricalEventTime(h));
+                }
+            }
+
+            addDragSample(event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+
+            // Input may arrive faster than the display refresh rate, so the handle is only moved
+            // once per frame, using the latest drag target
+            if (!mDragFramePending) {
+                mDragFramePending = true;
+                Choreographer.getInstance().postFrameCallback(mDragFrameCallback);
+            }
+        }
+    }
+
+    private void onTouchUp(final MotionEvent event) {
+        if (mActiveTouchPointerId != MotionEvent.INVALID_POINTER_ID && mGeometry.isGrabbed()) {
+            if (mActiveTouchPointerId == event.getPointerId(event.getActionIndex())) {
+                final int action = event.getActionMasked();
+
+                if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP) {
+                    // The lift-off point is the last raw sample of the drag
+                    mDragSampleX = event.getX(event.getActionIndex());
+                    mDragSampleY = event.getY(event.getActionIndex());
+                }
+
+                // Settle the handle on the last raw sample, rather than on a smoothed or predicted
+                // one, even if the last frame of the drag already ran
+                if (mDragFramePending || mDragSmoothing != DRAG_SMOOTHING_NONE) {
+                    mGeometry.move(mDragSampleX, mDragSampleY);
+                }
+
+                if (mDragFramePending) {
+                    Choreographer.getInstance().removeFrameCallback(mDragFrameCallback);
+                    mDragFramePending = false;
+                }
+
+                mActiveTouchPointerId = MotionEvent.INVALID_POINTER_ID;
+                mGeometry.release();
+
+                invalidateDecoration();
+
+                if (mOnCropChangeListener != null) {
+                    // The final bounds are delivered by the end of the drag
+                    cancelCropChanged();
+
+                    if (getCropBounds(mCropChangeBounds) != null) {
+                        mOnCropChangeListener.onCropChangeFinished(this, mCropChangeBounds);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addDragSample(final float x, final float y, final long time) {
+        if (mDragSmoothing == DRAG_SMOOTHING_SMOOTH) {
+            mDragTargetX += DRAG_SMOOTHING_FACTOR * (x - mDragTargetX);
+            mDragTargetY += DRAG_SMOOTHING_FACTOR * (y - mDragTargetY);
+        } else if (mDragSmoothing == DRAG_SMOOTHING_PREDICT) {
+            final long deltaTime = time - mDragSampleTime;
+
+            if (deltaTime > 0) {
+                mDragVelocityX += DRAG_SMOOTHING_FACTOR * ((x - mDragSampleX) / deltaTime - mDragVelocityX);
+                mDragVelocityY += DRAG_SMOOTHING_FACTOR * ((y - mDragSampleY) / deltaTime - mDragVelocityY);
+            }
+
+            // Extrapolate the drag along its current velocity to hide part of the input latency
+            mDragTargetX = x + mDragVelocityX * DRAG_PREDICTION_MS;
+            mDragTargetY = y + mDragVelocityY * DRAG_PREDICTION_MS;
+        } else {
+            mDragTargetX = x;
+            mDragTargetY = y;
+        }
+
+        mDragSampleX = x;
+        mDragSampleY = y;
+        mDragSampleTime = time;
     }
 
     @Override
-    @SuppressWarnings("deprecation")
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (isEnabled()) {
-            final float strokeWidth_half = 0.5F * mMarkerStrokeWidth;
+        Tracing.beginSection(Tracing.ON_DRAW);
+        try {
+            final long startTime = mMetricsListener != null ? System.nanoTime() : 0L;
 
-            mCropDrawRect.set(
-                    mMarkerLeft.value + strokeWidth_half,
-                    mMarkerTop.value + strokeWidth_half,
-                    mMarkerRight.value - strokeWidth_half,
-                    mMarkerBottom.value - strokeWidth_half);
+            drawMarker(canvas);
 
-            mPaint.setStyle(Paint.Style.FILL);
-            mPaint.setColor(mOverlayColor);
+            if (mMetricsListener != null) {
+                final long drawTime = System.nanoTime() - startTime;
+                final int touchEvents = mFrameTouchEvents;
 
-            canvas.save();
+                mFrameTouchEvents = 0;
+                mMetrics.getDrawTime().record(drawTime);
+                mMetrics.getTouchEventsPerFrame().record(touchEvents);
+                mMetricsListener.onFrameMetrics(drawTime, touchEvents, mMetrics);
+            }
+        } finally {
+            Tracing.endSection();
+        }
+    }
 
-            mMaskPath.reset();
-            if (mMask == MASK_RECTANGLE) {
-                mMaskPath.addRect(mCropDrawRect, Path.Direction.CW);
-            } else if (mMask == MASK_OVAL) {
-                mMaskPath.addOval(mCropDrawRect, Path.Direction.CW);
+    private void drawMarker(final Canvas canvas) {
+        if (isEnabled()) {
+            if (mGeometryDirty) {
+                updateGeometry();
             }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                canvas.clipOutPath(mMaskPath);
+            drawOverlay(canvas);
+
+            // The grid lines & the marker stroke only depend on the marker size, so they are
+            // recorded once and replayed at the current marker position, including while the
+            // marker is moved. They are only recorded again once it is resized or restyled.
+            if (mRenderMode == RENDER_MODE_CACHED &&
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q &&
+                    canvas.isHardwareAccelerated()) {
+                if (mDecorationRenderNode == null) {
+                    mDecorationRenderNode = new DecorationRenderNode();
+                }
+
+                mDecorationRenderNode.draw(this, canvas, mDecorationDirty);
             } else {
-                canvas.clipPath(mMaskPath, Region.Op.DIFFERENCE);
+                drawMarkerContent(canvas);
             }
 
-            canvas.drawPaint(mPaint);
-            canvas.restore();
+            drawTouchHandles(canvas);
 
-            if (mGridLines > 0 &&
-                    mGridLinesBehavior != GRID_LINES_BEHAVIOR_NONE &&
-                    (mGridLinesBehavior != GRID_LINES_BEHAVIOR_TOUCH || mActiveTouchHandle != null)) {
-                mPaint.setStyle(Paint.Style.STROKE);
-                mPaint.setColor(mGridLinesColor);
-                mPaint.setStrokeWidth(mGridLinesWidth);
-                mPaint.setPathEffect(mGridLinesDashPathEffect);
+            mDecorationDirty = false;
+        }
+    }
 
-                final float gridCellWidth = mCropDrawRect.width() / (mGridLines + 1F);
-                final float gridCellHeight = mCropDrawRect.height() / (mGridLines + 1F);
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final SavedState savedState = new SavedState(super.onSaveInstanceState());
+        final RectF cropBounds = mCropBoundsPending ? mPendingCropBounds : getCropBounds(new RectF());
+
+        if (cropBounds != null) {
+            savedState.mHasCropBounds = true;
+            savedState.mLeft = cropBounds.left;
+            savedState.mTop = cropBounds.top;
+            savedState.mRight = cropBounds.right;
+            savedState.mBottom = cropBounds.bottom;
+        }
 
-                float gridX = mCropDrawRect.left;
-                float gridY = mCropDrawRect.top;
+        return savedState;
+    }
 
-                canvas.save();
-                canvas.clipPath(mMaskPath);
+    @Override
+    protected void onRestoreInstanceState(final Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
 
-                for (int i = 0; i < mGridLines; ++i) {
-                    gridX += gridCellWidth;
-                    gridY += gridCellHeight;
+        final SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
 
-                    canvas.drawLine(gridX, mCropDrawRect.top, gridX, mCropDrawRect.bottom, mPaint);
-                    canvas.drawLine(mCropDrawRect.left, gridY, mCropDrawRect.right, gridY, mPaint);
-                }
+        if (savedState.mHasCropBounds) {
+            setCropBounds(new RectF(savedState.mLeft, savedState.mTop, savedState.mRight, savedState.mBottom));
+        }
+    }
 
-                canvas.restore();
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
 
-                mPaint.setPathEffect(null);
-            }
+        if (mDragFramePending) {
+            Choreographer.getInstance().removeFrameCallback(mDragFrameCallback);
+            mDragFramePending = false;
+        }
+
+        if (mDecorationRenderNode != null) {
+            mDecorationRenderNode.discard();
+        }
+
+        cancelCropChanged();
+    }
 
+    private void drawOverlay(final Canvas canvas) {
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setColor(mOverlayColor);
+
+        if (mMask == MASK_OVAL) {
+            canvas.drawPath(mOverlayPath, mPaint);
+        } else {
+            final int width = getWidth();
+            final int height = getHeight();
+
+            canvas.drawRect(0, 0, width, mCropDrawRect.top, mPaint);
+            canvas.drawRect(0, mCropDrawRect.bottom, width, height, mPaint);
+            canvas.drawRect(0, mCropDrawRect.top, mCropDrawRect.left, mCropDrawRect.bottom, mPaint);
+            canvas.drawRect(mCropDrawRect.right, mCropDrawRect.top, width, mCropDrawRect.bottom, mPaint);
+        }
+    }
+
+    private void drawMarkerContent(final Canvas canvas) {
+        if (mGridLines > 0 &&
+                mGridLinesBehavior != GRID_LINES_BEHAVIOR_NONE &&
+                (mGridLinesBehavior != GRID_LINES_BEHAVIOR_TOUCH || mGeometry.isGrabbed())) {
             mPaint.setStyle(Paint.Style.STROKE);
-            mPaint.setColor(mMarkerStrokeColor);
-            mPaint.setStrokeWidth(mMarkerStrokeWidth);
-            mPaint.setPathEffect(mMarkerStrokeDashPathEffect);
+            mPaint.setColor(mGridLinesColor);
+            mPaint.setStrokeWidth(mGridLinesWidth);
+            mPaint.setPathEffect(mGridLinesDashPathEffect);
 
-            canvas.drawRect(mCropDrawRect, mPaint);
+            if (mMask == MASK_RECTANGLE) {
+                // The grid lines are already contained by the rectangle mask
+                canvas.drawLines(mGridLinesPoints, 0, 8 * mGridLines, mPaint);
+            } else {
+                canvas.save();
+                canvas.clipPath(mMaskPath);
+                canvas.drawLines(mGridLinesPoints, 0, 8 * mGridLines, mPaint);
+                canvas.restore();
+            }
 
             mPaint.setPathEffect(null);
+        }
 
-            if (mTouchHandleDrawable != null) {
-                for (TouchHandle touchHandle: mMarkerHandles) {
-                    if (!(touchHandle instanceof PointTouchHandle)) {
-                        continue;
-                    }
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setColor(mMarkerStrokeColor);
+        mPaint.setStrokeWidth(mMarkerStrokeWidth);
+        mPaint.setPathEffect(mMarkerStrokeDashPathEffect);
 
-                    canvas.save();
-                    canvas.translate(
-                            touchHandle.anchor.x.value - (mTouchHandleDrawable.getBounds().width() * mTouchHandleDrawableAnchorX),
-                            touchHandle.anchor.y.value - (mTouchHandleDrawable.getBounds().height() * mTouchHandleDrawableAnchorY)
-                    );
+        canvas.drawRect(mCropDrawRect, mPaint);
 
-                    mTouchHandleDrawable.draw(canvas);
+        mPaint.setPathEffect(null);
+    }
 
-                    canvas.restore();
-                }
-            } else if (mTouchHandleStrokeWidth > 0 && mTouchHandleStrokeLength > 0 && mTouchHandleStrokeColor != 0) {
-                mTouchHandlesRect.set(
-                        mMarkerLeft.value + mTouchHandleStrokeInset,
-                        mMarkerTop.value + mTouchHandleStrokeInset,
-                        mMarkerRight.value - mTouchHandleStrokeInset,
-                        mMarkerBottom.value - mTouchHandleStrokeInset
-                );
+    private void drawTouchHandles(final Canvas canvas) {
+        if (mTouchHandleDrawable != null) {
+            final float left = mGeometry.getLeft();
+            final float top = mGeometry.getTop();
+            final float right = mGeometry.getRight();
+            final float bottom = mGeometry.getBottom();
+
+            drawTouchHandleDrawable(canvas, left, top);
+            drawTouchHandleDrawable(canvas, right, top);
+            drawTouchHandleDrawable(canvas, left, bottom);
+            drawTouchHandleDrawable(canvas, right, bottom);
+
+            if (mEdgeTouchHandles) {
+                final float centerX = 0.5F * (left + right);
+                final float centerY = 0.5F * (top + bottom);
+
+                drawTouchHandleDrawable(canvas, left, centerY);
+                drawTouchHandleDrawable(canvas, centerX, top);
+                drawTouchHandleDrawable(canvas, right, centerY);
+                drawTouchHandleDrawable(canvas, centerX, bottom);
+            }
+        } else if (mTouchHandleStrokeWidth > 0 && mTouchHandleStrokeLength > 0 && mTouchHandleStrokeColor != 0) {
+            if (mTouchHandlesRect.left < mTouchHandlesRect.right && mTouchHandlesRect.top < mTouchHandlesRect.bottom) {
+                mPaint.setStyle(Paint.Style.STROKE);
+                mPaint.setColor(mTouchHandleStrokeColor);
+                mPaint.setStrokeWidth(mTouchHandleStrokeWidth);
 
-                if (mTouchHandlesRect.left < mTouchHandlesRect.right && mTouchHandlesRect.top < mTouchHandlesRect.bottom) {
-                    final float touchHandleStrokeWidth_half = 0.5F * mTouchHandleStrokeWidth;
+                canvas.drawLines(mTouchHandleLinesPoints, 0, mEdgeTouchHandles ? 48 : 32, mPaint);
+            }
+        }
+    }
+
+    private void drawTouchHandleDrawable(final Canvas canvas, final float x, final float y) {
+        canvas.save();
+        canvas.translate(
+                x - (mTouchHandleDrawable.getBounds().width() * mTouchHandleDrawableAnchorX),
+                y - (mTouchHandleDrawable.getBounds().height() * mTouchHandleDrawableAnchorY)
+        );
+
+        mTouchHandleDrawable.draw(canvas);
+
+        canvas.restore();
+    }
+
+    private void invalidateDecoration() {
+        mDecorationDirty = true;
+        invalidate();
+    }
 
-                    mPaint.setStyle(Paint.Style.STROKE);
-                    mPaint.setColor(mTouchHandleStrokeColor);
-                    mPaint.setStrokeWidth(mTouchHandleStrokeWidth);
+    private void invalidateGeometry() {
+        mGeometryDirty = true;
+        invalidateDecoration();
+    }
 
-                    canvas.drawLine(mTouchHandlesRect.left, mTouchHandlesRect.top + touchHandleStrokeWidth_half,
-                            mTouchHandlesRect.left + mTouchHandleStrokeLength, mTouchHandlesRect.top + touchHandleStrokeWidth_half, mPaint
-                    );
+    /**
+     * Invalidates only the region covered by the marker before and after a drag step. The dirty
+     * rectangle only reduces the redrawn area on software rendering: {@link #invalidate(Rect)} is
+     * deprecated from API 28 and, with hardware acceleration, the rectangle is ignored and the whole
+     * display list of the view is recorded again. On those devices, the redraw work is saved by
+     * {@link #RENDER_MODE_CACHED}, not by the dirty rectangle.
+     */
+    @SuppressWarnings("deprecation")
+    private void invalidateMarker() {
+        mGeometryDirty = true;
+
+        // Outside of the last drawn & the current marker rectangles, the overlay is unchanged. The
+        // rectangles are inflated by the extent of anything drawn across the marker edges.
+        // The drawable bounds may not be set yet (e.g. no intrinsic size), so its intrinsic size
+        // and the touch handle strokes extent are used as a floor.
+        int extent = Math.max(mMarkerStrokeWidth, mTouchHandleStrokeLength + mTouchHandleStrokeWidth + Math.abs(mTouchHandleStrokeInset));
+        if (mTouchHandleDrawable != null) {
+            final Rect bounds = mTouchHandleDrawable.getBounds();
 
-                    canvas.drawLine(mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.top,
-                            mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.top + mTouchHandleStrokeLength, mPaint
-                    );
+            extent = Math.max(extent, Math.max(bounds.width(), bounds.height()));
+            extent = Math.max(extent, Math.max(mTouchHandleDrawable.getIntrinsicWidth(), mTouchHandleDrawable.getIntrinsicHeight()));
+        }
 
-                    canvas.drawLine(mTouchHandlesRect.right, mTouchHandlesRect.top + touchHandleStrokeWidth_half,
-                            mTouchHandlesRect.right - mTouchHandleStrokeLength, mTouchHandlesRect.top + touchHandleStrokeWidth_half, mPaint
-                    );
+        mDirtyRect.set(mDrawnMarkerRect);
+        mDirtyRect.union(
+                (int) Math.floor(mGeometry.getLeft()),
+                (int) Math.floor(mGeometry.getTop()),
+                (int) Math.ceil(mGeometry.getRight()),
+                (int) Math.ceil(mGeometry.getBottom()));
+        mDirtyRect.inset(-extent, -extent);
+
+        invalidate(mDirtyRect);
+    }
+
+    private void updateGeometry() {
+        mDrawnMarkerRect.set(
+                (int) Math.floor(mGeometry.getLeft()),
+                (int) Math.floor(mGeometry.getTop()),
+                (int) Math.ceil(mGeometry.getRight()),
+                (int) Math.ceil(mGeometry.getBottom()));
+
+        final float strokeWidth_half = 0.5F * mMarkerStrokeWidth;
+
+        mCropDrawRect.set(
+                mGeometry.getLeft() + strokeWidth_half,
+                mGeometry.getTop() + strokeWidth_half,
+                mGeometry.getRight() - strokeWidth_half,
+                mGeometry.getBottom() - strokeWidth_half);
+
+        mTouchHandlesRect.set(
+                mGeometry.getLeft() + mTouchHandleStrokeInset,
+                mGeometry.getTop() + mTouchHandleStrokeInset,
+                mGeometry.getRight() - mTouchHandleStrokeInset,
+                mGeometry.getBottom() - mTouchHandleStrokeInset
+        );
 
-                    canvas.drawLine(mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.top,
-                            mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.top + mTouchHandleStrokeLength, mPaint
-                    );
+        // Touch handle strokes are stored as (startX, startY, endX, endY) horizontal & vertical pairs
+        final float touchHandleStrokeWidth_half = 0.5F * mTouchHandleStrokeWidth;
+
+        setLine(mTouchHandleLinesPoints, 0, mTouchHandlesRect.left, mTouchHandlesRect.top + touchHandleStrokeWidth_half,
+                mTouchHandlesRect.left + mTouchHandleStrokeLength, mTouchHandlesRect.top + touchHandleStrokeWidth_half);
+        setLine(mTouchHandleLinesPoints, 1, mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.top,
+                mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.top + mTouchHandleStrokeLength);
+        setLine(mTouchHandleLinesPoints, 2, mTouchHandlesRect.right, mTouchHandlesRect.top + touchHandleStrokeWidth_half,
+                mTouchHandlesRect.right - mTouchHandleStrokeLength, mTouchHandlesRect.top + touchHandleStrokeWidth_half);
+        setLine(mTouchHandleLinesPoints, 3, mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.top,
+                mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.top + mTouchHandleStrokeLength);
+        setLine(mTouchHandleLinesPoints, 4, mTouchHandlesRect.left, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half,
+                mTouchHandlesRect.left + mTouchHandleStrokeLength, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half);
+        setLine(mTouchHandleLinesPoints, 5, mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.bottom,
+                mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.bottom - mTouchHandleStrokeLength);
+        setLine(mTouchHandleLinesPoints, 6, mTouchHandlesRect.right, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half,
+                mTouchHandlesRect.right - mTouchHandleStrokeLength, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half);
+        setLine(mTouchHandleLinesPoints, 7, mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.bottom - mTouchHandleStrokeLength,
+                mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.bottom);
+
+        // Edge touch handle strokes are centered on the edge midpoints
+        final float touchHandlesCenterX = mTouchHandlesRect.centerX();
+        final float touchHandlesCenterY = mTouchHandlesRect.centerY();
+        final float touchHandleStrokeLength_half = 0.5F * mTouchHandleStrokeLength;
+
+        setLine(mTouchHandleLinesPoints, 8, mTouchHandlesRect.left + touchHandleStrokeWidth_half, touchHandlesCenterY - touchHandleStrokeLength_half,
+                mTouchHandlesRect.left + touchHandleStrokeWidth_half, touchHandlesCenterY + touchHandleStrokeLength_half);
+        setLine(mTouchHandleLinesPoints, 9, touchHandlesCenterX - touchHandleStrokeLength_half, mTouchHandlesRect.top + touchHandleStrokeWidth_half,
+                touchHandlesCenterX + touchHandleStrokeLength_half, mTouchHandlesRect.top + touchHandleStrokeWidth_half);
+        setLine(mTouchHandleLinesPoints, 10, mTouchHandlesRect.right - touchHandleStrokeWidth_half, touchHandlesCenterY - touchHandleStrokeLength_half,
+                mTouchHandlesRect.right - touchHandleStrokeWidth_half, touchHandlesCenterY + touchHandleStrokeLength_half);
+        setLine(mTouchHandleLinesPoints, 11, touchHandlesCenterX - touchHandleStrokeLength_half, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half,
+                touchHandlesCenterX + touchHandleStrokeLength_half, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half);
+
+        mMaskPath.reset();
+        mOverlayPath.reset();
+        if (mMask == MASK_RECTANGLE) {
+            mMaskPath.addRect(mCropDrawRect, Path.Direction.CW);
+        } else if (mMask == MASK_OVAL) {
+            mMaskPath.addOval(mCropDrawRect, Path.Direction.CW);
+
+            // The overlay is the inverse of the oval, so it can be filled without clipping
+            mOverlayPath.addOval(mCropDrawRect, Path.Direction.CW);
+            mOverlayPath.setFillType(Path.FillType.INVERSE_EVEN_ODD);
+        }
 
-                    canvas.drawLine(mTouchHandlesRect.left, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half,
-                            mTouchHandlesRect.left + mTouchHandleStrokeLength, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half, mPaint
-                    );
+        // Grid lines are stored as (startX, startY, endX, endY) vertical & horizontal pairs
+        if (mGridLinesPoints.length < 8 * mGridLines) {
+            mGridLinesPoints = new float[8 * mGridLines];
+        }
 
-                    canvas.drawLine(mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.bottom,
-                            mTouchHandlesRect.left + touchHandleStrokeWidth_half, mTouchHandlesRect.bottom - mTouchHandleStrokeLength, mPaint
-                    );
+        final float gridCellWidth = mCropDrawRect.width() / (mGridLines + 1F);
+        final float gridCellHeight = mCropDrawRect.height() / (mGridLines + 1F);
 
-                    canvas.drawLine(mTouchHandlesRect.right, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half,
-                            mTouchHandlesRect.right - mTouchHandleStrokeLength, mTouchHandlesRect.bottom - touchHandleStrokeWidth_half, mPaint
-                    );
+        float gridX = mCropDrawRect.left;
+        float gridY = mCropDrawRect.top;
 
-                    canvas.drawLine(mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.bottom - mTouchHandleStrokeLength,
-                            mTouchHandlesRect.right - touchHandleStrokeWidth_half, mTouchHandlesRect.bottom, mPaint
-                    );
-                }
-            }
+        for (int i = 0; i < mGridLines; ++i) {
+            gridX += gridCellWidth;
+            gridY += gridCellHeight;
+
+            setLine(mGridLinesPoints, 2 * i, gridX, mCropDrawRect.top, gridX, mCropDrawRect.bottom);
+            setLine(mGridLinesPoints, 2 * i + 1, mCropDrawRect.left, gridY, mCropDrawRect.right, gridY);
         }
+
+        mGeometryDirty = false;
+    }
+
+    private static void setLine(final float[] points, final int line, final float startX, final float startY, final float endX, final float endY) {
+        final int offset = 4 * line;
+
+        points[offset] = startX;
+        points[offset + 1] = startY;
+        points[offset + 2] = endX;
+        points[offset + 3] = endY;
     }
 
     public int getMarkerLeft() {
-        return mMarkerLeft.value;
+        return Math.round(mGeometry.getLeft());
     }
 
     public void setMarkerLeft(final int left) {
         setMarker(
                 left,
-                mMarkerHandleTopLeft.anchor.y.value,
-                mMarkerHandleBottomRight.anchor.x.value,
-                mMarkerHandleBottomRight.anchor.y.value
+                mGeometry.getTop(),
+                mGeometry.getRight(),
+                mGeometry.getBottom()
         );
     }
 
     public int getMarkerTop() {
-        return mMarkerTop.value;
+        return Math.round(mGeometry.getTop());
     }
 
     public void setMarkerTop(final int top) {
         setMarker(
-                mMarkerHandleTopLeft.anchor.x.value,
+                mGeometry.getLeft(),
                 top,
-                mMarkerHandleBottomRight.anchor.x.value,
-                mMarkerHandleBottomRight.anchor.y.value
+                mGeometry.getRight(),
+                mGeometry.getBottom()
         );
     }
 
     public int getMarkerRight() {
-        return mMarkerRight.value;
+        return Math.round(mGeometry.getRight());
     }
 
     public void setMarkerRight(final int right) {
         setMarker(
-                mMarkerHandleTopLeft.anchor.x.value,
-                mMarkerHandleTopLeft.anchor.y.value,
+                mGeometry.getLeft(),
+                mGeometry.getTop(),
                 right,
-                mMarkerHandleBottomRight.anchor.y.value
+                mGeometry.getBottom()
         );
     }
 
     public int getMarkerBottom() {
-        return mMarkerBottom.value;
+        return Math.round(mGeometry.getBottom());
     }
 
     public void setMarkerBottom(final int bottom) {
         setMarker(
-                mMarkerHandleTopLeft.anchor.x.value,
-                mMarkerHandleTopLeft.anchor.y.value,
-                mMarkerHandleBottomRight.anchor.x.value,
+                mGeometry.getLeft(),
+                mGeometry.getTop(),
+                mGeometry.getRight(),
                 bottom
         );
     }
 
     public void setMarker(final int left, final int top, final int right, final int bottom) {
-        mMarkerHandleTopLeft.grab(mMarkerHandleTopLeft.anchor.x.value, mMarkerHandleTopLeft.anchor.y.value);
-        mMarkerHandleTopLeft.move(left, top);
-        mMarkerHandleTopLeft.release();
+        setMarker((float) left, (float) top, (float) right, (float) bottom);
+    }
 
-        mMarkerHandleBottomRight.grab(mMarkerHandleBottomRight.anchor.x.value, mMarkerHandleBottomRight.anchor.y.value);
-        mMarkerHandleBottomRight.move(right, bottom);
-        mMarkerHandleBottomRight.release();
+    public void setMarker(final float left, final float top, final float right, final float bottom) {
+        mCropBoundsPending = false;
+        mGeometry.setMarker(left, top, right, bottom);
 
-        invalidate();
+        invalidateGeometry();
+        notifyCropChanged(false, false);
+    }
+
+    /**
+     * @return the marker rectangle, in view pixels
+     */
+    public RectF getMarker(final RectF out) {
+        out.set(mGeometry.getLeft(), mGeometry.getTop(), mGeometry.getRight(), mGeometry.getBottom());
+        return out;
     }
 
     public float getAspectRatio() {
@@ -526,7 +911,7 @@ public class CropMarker extends View {
 
     public void setAspectRatio(final float cropMarkerAspectRatio) {
         mAspectRatio = Float.isNaN(cropMarkerAspectRatio) || Float.compare(cropMarkerAspectRatio, 0F) < 0 ? 0 : cropMarkerAspectRatio;
-        mAspectRatioRef.value = mAspectRatio;
+        mGeometry.setAspectRatio(mAspectRatio);
 
         reset();
     }
@@ -537,7 +922,7 @@ public class CropMarker extends View {
 
     public void setMinSize(final int minSize) {
         mMinSize = Math.max(0, minSize);
-        mMinSizeRef.value = mMinSize;
+        mGeometry.setMinSize(mMinSize);
 
         reset();
     }
@@ -548,7 +933,7 @@ public class CropMarker extends View {
 
     public void setOverlayColor(final int overlayColor) {
         mOverlayColor = overlayColor;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getMarkerStrokeColor() {
@@ -557,7 +942,7 @@ public class CropMarker extends View {
 
     public void setMarkerStrokeColor(final int markerStrokeColor) {
         mMarkerStrokeColor = markerStrokeColor;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getMarkerStrokeWidth() {
@@ -566,7 +951,7 @@ public class CropMarker extends View {
 
     public void setMarkerStrokeWidth(final int markerStrokeWidth) {
         mMarkerStrokeWidth = Math.max(0, markerStrokeWidth);
-        invalidate();
+        invalidateGeometry();
     }
 
     public int getMarkerStrokeDashWidth() {
@@ -584,7 +969,7 @@ public class CropMarker extends View {
         this.mMarkerStrokeDashPathEffect = (mMarkerStrokeDashWidth > 0 && mMarkerStrokeDashGap > 0) ?
                 new DashPathEffect(new float[] { mMarkerStrokeDashWidth, mMarkerStrokeDashGap }, 0F): null;
 
-        invalidate();
+        invalidateDecoration();
     }
 
     public Drawable getTouchHandleDrawable() {
@@ -598,7 +983,7 @@ public class CropMarker extends View {
             mTouchHandleDrawable.setBounds(0, 0, mTouchHandleDrawable.getIntrinsicWidth(), mTouchHandleDrawable.getIntrinsicHeight());
         }
 
-        invalidate();
+        invalidateDecoration();
     }
 
     public float getTouchHandleDrawableAnchorX() {
@@ -609,7 +994,7 @@ public class CropMarker extends View {
         this.mTouchHandleDrawableAnchorX = (Float.isFinite(touchHandleDrawableAnchorX)) ?
                 Math.min(1F, Math.max(0F, touchHandleDrawableAnchorX)) :
                 DEFAULT_TOUCH_HANDLE_DRAWABLE_ANCHOR_X;
-        invalidate();
+        invalidateDecoration();
     }
 
     public float getTouchHandleDrawableAnchorY() {
@@ -620,7 +1005,7 @@ public class CropMarker extends View {
         this.mTouchHandleDrawableAnchorY = (Float.isFinite(touchHandleDrawableAnchorY)) ?
                 Math.min(1F, Math.max(0F, touchHandleDrawableAnchorY)) :
                 DEFAULT_TOUCH_HANDLE_DRAWABLE_ANCHOR_Y;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getTouchHandleStrokeColor() {
@@ -629,7 +1014,7 @@ public class CropMarker extends View {
 
     public void setTouchHandleStrokeColor(final int touchHandleStrokeColor) {
         mTouchHandleStrokeColor = touchHandleStrokeColor;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getTouchHandleStrokeWidth() {
@@ -638,7 +1023,7 @@ public class CropMarker extends View {
 
     public void setTouchHandleStrokeWidth(final int touchHandleStrokeWidth) {
         mTouchHandleStrokeWidth = Math.max(0, touchHandleStrokeWidth);
-        invalidate();
+        invalidateGeometry();
     }
 
     public int getTouchHandleStrokeLength() {
@@ -647,7 +1032,7 @@ public class CropMarker extends View {
 
     public void setTouchHandleStrokeLength(final int touchHandleStrokeLength) {
         mTouchHandleStrokeLength = Math.max(0, touchHandleStrokeLength);
-        invalidate();
+        invalidateGeometry();
     }
 
     public int getTouchHandleStrokeInset() {
@@ -656,7 +1041,7 @@ public class CropMarker extends View {
 
     public void setTouchHandleStrokeInset(final int inset) {
         mTouchHandleStrokeInset = inset;
-        invalidate();
+        invalidateGeometry();
     }
 
     public int getTouchThreshold() {
@@ -665,6 +1050,7 @@ public class CropMarker extends View {
 
     public void setTouchThreshold(final int touchThreshold) {
         mTouchThreshold = Math.max(0, touchThreshold);
+        mGeometry.setTouchThreshold(mTouchThreshold);
     }
 
     public int getGridLinesBehavior() {
@@ -673,7 +1059,7 @@ public class CropMarker extends View {
 
     public void setGridLinesBehavior(final int gridLinesBehavior) {
         mGridLinesBehavior = gridLinesBehavior;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getGridLines() {
@@ -682,7 +1068,7 @@ public class CropMarker extends View {
 
     public void setGridLines(final int gridLines) {
         mGridLines = Math.max(0, gridLines);
-        invalidate();
+        invalidateGeometry();
     }
 
     public int getGridLinesColor() {
@@ -691,7 +1077,7 @@ public class CropMarker extends View {
 
     public void setGridLinesColor(final int gridLinesColor) {
         mGridLinesColor = gridLinesColor;
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getGridLinesWidth() {
@@ -700,7 +1086,7 @@ public class CropMarker extends View {
 
     public void setGridLinesWidth(final int gridLinesWidth) {
         mGridLinesWidth = Math.max(0, gridLinesWidth);
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getGridLinesDashWidth() {
@@ -718,7 +1104,7 @@ public class CropMarker extends View {
         this.mGridLinesDashPathEffect = (mGridLinesDashWidth > 0 && mGridLinesDashGap > 0) ?
                 new DashPathEffect(new float[] { mGridLinesDashWidth, mGridLinesDashGap }, 0F): null;
 
-        invalidate();
+        invalidateDecoration();
     }
 
     public int getMask() {
@@ -727,384 +1113,591 @@ public class CropMarker extends View {
 
     public void setMask(final int mask) {
         mMask = mask;
-        invalidate();
+        invalidateGeometry();
     }
 
-    public final RectF getCropBounds() {
-        RectF cropBounds = null;
-
-        if (isEnabled()) {
-            final float width = getWidth();
-            final float height = getHeight();
-
-            if (Float.compare(width, 0F) > 0 && Float.compare(height, 0F) > 0) {
-                cropBounds = new RectF(
-                        mMarkerLeft.value / width,
-                        mMarkerTop.value / height,
-                        mMarkerRight.value / width,
-                        mMarkerBottom.value / height
-                );
-            }
-        }
+    public boolean getEdgeTouchHandles() {
+        return mEdgeTouchHandles;
+    }
 
-        return cropBounds;
+    public void setEdgeTouchHandles(final boolean edgeTouchHandles) {
+        mEdgeTouchHandles = edgeTouchHandles;
+        mGeometry.setEdgeHandles(mEdgeTouchHandles);
+        invalidateGeometry();
     }
 
-    private final void reset() {
-        mMarkerHandleTopLeft.grab(mMarkerHandleTopLeft.anchor.x.value, mMarkerHandleTopLeft.anchor.y.value);
-        mMarkerHandleTopLeft.move(0, 0);
-        mMarkerHandleTopLeft.release();
+    public int getEdgeTouchHandlesBehavior() {
+        return mEdgeTouchHandlesBehavior;
+    }
 
-        mMarkerHandleBottomRight.grab(mMarkerHandleBottomRight.anchor.x.value, mMarkerHandleBottomRight.anchor.y.value);
-        mMarkerHandleBottomRight.move(getWidth(), getHeight());
-        mMarkerHandleBottomRight.release();
+    public void setEdgeTouchHandlesBehavior(final int edgeTouchHandlesBehavior) {
+        mEdgeTouchHandlesBehavior = edgeTouchHandlesBehavior;
+        mGeometry.setEdgeHandlesBehavior(mEdgeTouchHandlesBehavior);
+    }
 
-        invalidate();
+    public int getRenderMode() {
+        return mRenderMode;
     }
 
-    private static final class MInt {
+    /**
+     * @param renderMode {@link #RENDER_MODE_DIRECT} or {@link #RENDER_MODE_CACHED}. The cached mode
+     * only caches the grid lines and the marker stroke, and only on API 29+ with a hardware
+     * accelerated canvas. Otherwise, it behaves exactly like the direct mode.
+     */
+    public void setRenderMode(final int renderMode) {
+        if (mRenderMode == renderMode) {
+            return;
+        }
 
-        int value;
+        mRenderMode = renderMode;
 
-        MInt() { this.value = Integer.MIN_VALUE; }
-        MInt(int value) { this.value = value; }
+        if (mRenderMode != RENDER_MODE_CACHED && mDecorationRenderNode != null) {
+            mDecorationRenderNode.discard();
+        }
 
+        invalidateDecoration();
     }
 
-    private static final class MFloat {
-
-        float value;
-
-        MFloat() { this.value = Float.NaN; }
-        MFloat(final float value) { this.value = value; }
-
+    public int getDragSmoothing() {
+        return mDragSmoothing;
     }
 
-    private static final class Point {
+    public void setDragSmoothing(final int dragSmoothing) {
+        mDragSmoothing = dragSmoothing;
+    }
 
-        final MInt x;
-        final MInt y;
+    public final RectF getCropBounds() {
+        final RectF cropBounds = new RectF();
+        return getCropBounds(cropBounds) != null ? cropBounds : null;
+    }
+
+    /**
+     * Same as {@link #getCropBounds()}, without allocation.
+     *
+     * @param out receives the current RELATIVE ([0..1]) crop bounds
+     * @return {@code out}, or null if the crop marker is not enabled or not laid out, in which case
+     * {@code out} is left unchanged
+     */
+    public final RectF getCropBounds(final RectF out) {
+        if (isEnabled()) {
+            final float width = getWidth();
+            final float height = getHeight();
 
-        Point() {
-            this.x = new MInt();
-            this.y = new MInt();
-        }
+            if (Float.compare(width, 0F) > 0 && Float.compare(height, 0F) > 0) {
+                out.set(
+                        mGeometry.getLeft() / width,
+                        mGeometry.getTop() / height,
+                        mGeometry.getRight() / width,
+                        mGeometry.getBottom() / height
+                );
 
-        Point(final MInt x, final MInt y) {
-            this.x = x;
-            this.y = y;
+                return out;
+            }
         }
 
-        void set(final int x, final int y) {
-            this.x.value = x;
-            this.y.value = y;
+        return null;
+    }
+
+    /**
+     * Sets the marker from RELATIVE ([0..1]) crop bounds, e.g. as returned by
+     * {@link #getCropBounds()} for a previous layout or unpacked by
+     * {@link CropSpec#unpackCropBounds(long, RectF)}. If the crop marker is not laid out yet, the
+     * bounds are applied, in a single pass, once it is. The bounds are clamped to [0..1], and
+     * ignored if they are then empty or inverted (or not numbers). The marker is then constrained
+     * as usual (aspect ratio, min size).
+     */
+    public final void setCropBounds(final RectF cropBounds) {
+        final float left = Math.min(Math.max(0F, cropBounds.left), 1F);
+        final float top = Math.min(Math.max(0F, cropBounds.top), 1F);
+        final float right = Math.min(Math.max(0F, cropBounds.right), 1F);
+        final float bottom = Math.min(Math.max(0F, cropBounds.bottom), 1F);
+
+        if (!(right > left && bottom > top)) {
+            return;
         }
 
-    }
+        mPendingCropBounds.set(left, top, right, bottom);
 
-    private static abstract class Bounds {
+        final int width = getWidth();
+        final int height = getHeight();
 
-        abstract int left();
-        abstract int top();
-        abstract int right();
-        abstract int bottom();
+        if (width > 0 && height > 0 && !isLayoutRequested()) {
+            mCropBoundsPending = false;
 
-        final boolean contains(final int x, final int y) {
-            return left() <= x && x <= right() && top() <= y && y <= bottom();
-        }
+            setGeometry(mPendingCropBounds, width, height);
+            mGeometry.constrain();
 
-        final boolean contains(final float x, final float y) {
-            return Float.compare(left(), x) <= 0 &&
-                    Float.compare(x, right()) <= 0 &&
-                    Float.compare(top(), y) <= 0 &&
-                    Float.compare(y, bottom()) <= 0;
+            invalidateGeometry();
+            notifyCropChanged(false, false);
+        } else {
+            mCropBoundsPending = true;
         }
-
     }
 
-    private static final class RectBounds extends Bounds {
-
-        private final MInt left;
-        private final MInt top;
-        private final MInt right;
-        private final MInt bottom;
+    /**
+     * @param cropBounds crop bounds already clamped to [0..1], see {@link #setCropBounds(RectF)}
+     */
+    private void setGeometry(final RectF cropBounds, final int width, final int height) {
+        mGeometry.set(cropBounds.left * width, cropBounds.top * height, cropBounds.right * width, cropBounds.bottom * height);
+    }
 
-        RectBounds() {
-            this.left = new MInt();
-            this.top = new MInt();
-            this.right = new MInt();
-            this.bottom = new MInt();
-        }
+    /**
+     * Computes the crop rectangle in source pixels, for a source of the given dimensions, with the
+     * full precision of the crop marker. Unlike {@link #getCropBounds()}, the result is not limited
+     * by the float precision of a relative rectangle, which matters when the view is much smaller
+     * than the source.
+     *
+     * @param sourceWidth the width of the source, in pixels
+     * @param sourceHeight the height of the source, in pixels
+     * @return the {left, top, right, bottom} crop rectangle in source pixels, or null if the crop
+     * marker is not enabled or not laid out
+     */
+    public final double[] getCropBounds(final int sourceWidth, final int sourceHeight) {
+        double[] cropBounds = null;
 
-        RectBounds(final MInt left, final MInt top, final MInt right, final MInt bottom) {
-            this.left = left;
-            this.top = top;
-            this.right = right;
-            this.bottom = bottom;
+        if (isEnabled()) {
+            final int width = getWidth();
+            final int height = getHeight();
+
+            if (width > 0 && height > 0) {
+                final double scaleX = (double) sourceWidth / width;
+                final double scaleY = (double) sourceHeight / height;
+
+                cropBounds = new double[] {
+                        mGeometry.getLeft() * scaleX,
+                        mGeometry.getTop() * scaleY,
+                        mGeometry.getRight() * scaleX,
+                        mGeometry.getBottom() * scaleY
+                };
+            }
         }
 
-        @Override public final int left() { return left.value; }
-        @Override public final int top() { return top.value; }
-        @Override public final int right() { return right.value; }
-        @Override public final int bottom() { return bottom.value; }
+        return cropBounds;
+    }
 
-        final void set(final int left, final int top, final int right, final int bottom) {
-            this.left.value = left;
-            this.top.value = top;
-            this.right.value = right;
-            this.bottom.value = bottom;
+    /**
+     * @param exifOrientation the EXIF orientation of the source ({@link ExifInterface#ORIENTATION_NORMAL},
+     * {@link ExifInterface#ORIENTATION_ROTATE_90}, {@link ExifInterface#ORIENTATION_FLIP_HORIZONTAL}, ...)
+     * over which the crop marker is shown, upright
+     * @return the current RELATIVE ([0..1]) crop bounds in the stored (not rotated) source, or null
+     * if the crop marker is not enabled or not laid out
+     */
+    public final RectF getStoredCropBounds(final int exifOrientation) {
+        final RectF cropBounds = new RectF();
+        return getStoredCropBounds(exifOrientation, cropBounds);
+    }
+
+    /**
+     * Same as {@link #getStoredCropBounds(int)}, without allocation.
+     *
+     * @param out receives the current RELATIVE ([0..1]) crop bounds in the stored source
+     * @return {@code out}, or null if the crop marker is not enabled or not laid out, in which case
+     * {@code out} is left unchanged
+     */
+    public final RectF getStoredCropBounds(final int exifOrientation, final RectF out) {
+        return getCropBounds(out) != null ? mapCropBounds(out, exifOrientation, out) : null;
+    }
+
+    /**
+     * Maps RELATIVE ([0..1]) crop bounds of the upright source to the stored source, which has the
+     * given EXIF orientation. The region can then be decoded directly and only the cropped output
+     * needs to be rotated (see {@link CropOptions#setOrientation(int)}).
+     *
+     * @param out receives the mapped crop bounds, can be the same as {@code cropBounds}
+     */
+    public static RectF mapCropBounds(final RectF cropBounds, final int orientation, final RectF out) {
+        final float left = cropBounds.left;
+        final float top = cropBounds.top;
+        final float right = cropBounds.right;
+        final float bottom = cropBounds.bottom;
+
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                out.set(1F - right, top, 1F - left, bottom);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                out.set(1F - right, 1F - bottom, 1F - left, 1F - top);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                out.set(left, 1F - bottom, right, 1F - top);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                out.set(top, left, bottom, right);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                out.set(top, 1F - right, bottom, 1F - left);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                out.set(1F - bottom, 1F - right, 1F - top, 1F - left);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                out.set(1F - bottom, left, 1F - top, right);
+                break;
+            default:
+                out.set(left, top, right, bottom);
+                break;
         }
 
-        final void add(final int x, final int y) {
-            this.left.value = Math.min(this.left.value, x);
-            this.top.value = Math.min(this.top.value, y);
-            this.right.value = Math.max(this.right.value, x);
-            this.bottom.value = Math.max(this.bottom.value, y);
+        return out;
+    }
+
+    /**
+     * @return true if the EXIF orientation swaps the width and height of the source
+     */
+    static boolean isTransposed(final int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE ||
+                orientation == ExifInterface.ORIENTATION_ROTATE_90 ||
+                orientation == ExifInterface.ORIENTATION_TRANSVERSE ||
+                orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * @param viewToImage maps view pixels to image buffer pixels (see
+     * {@link ImageCropper#viewToImageTransform(int, int, int, int, int, boolean, boolean, Matrix)})
+     * @return the current marker rectangle in image buffer pixels, rounded outwards and clamped to
+     * the image, or null if the crop marker is not enabled or not laid out
+     */
+    public final Rect getImageCropRect(final Matrix viewToImage, final int imageWidth, final int imageHeight) {
+        return getImageCropRect(viewToImage, imageWidth, imageHeight, new Rect());
+    }
+
+    /**
+     * Same as {@link #getImageCropRect(Matrix, int, int)}, without allocation, e.g. for every
+     * camera frame. Must be called on the main thread.
+     *
+     * @param out receives the marker rectangle in image buffer pixels
+     * @return {@code out}, or null if the crop marker is not enabled or not laid out, in which case
+     * {@code out} is left unchanged
+     */
+    public final Rect getImageCropRect(final Matrix viewToImage, final int imageWidth, final int imageHeight, final Rect out) {
+        if (!isEnabled() || getWidth() <= 0 || getHeight() <= 0) {
+            return null;
         }
 
+        return ImageCropper.mapToImage(getMarker(mImageCropRect), viewToImage, imageWidth, imageHeight, out);
     }
 
-    private static final class AnchorBounds extends Bounds {
+    /**
+     * @return the current crop bounds, aspect ratio and mask, to be applied to other images (see
+     * {@link BatchCropper}), or null if the crop marker is not enabled or not laid out
+     */
+    public final CropSpec getCropSpec() {
+        final RectF cropBounds = getCropBounds();
 
-        private final Point anchor;
-        private final MInt threshold;
+        return cropBounds != null ? new CropSpec(cropBounds, mAspectRatio, mMask) : null;
+    }
 
-        AnchorBounds(final Point anchor, final MInt threshold) {
-            this.anchor = anchor;
-            this.threshold = threshold;
+    /**
+     * Crops the source at its own resolution, using the current crop bounds and mask. Only the
+     * cropped region of the source is decoded, on a background thread, and the result is delivered
+     * to the callback on the main thread.
+     *
+     * @return the pending crop, which can be cancelled, or null if the crop marker is not enabled or
+     * not laid out, in which case the callback is not invoked
+     */
+    public final Future<?> crop(final CropSource source, final CropOptions options, final CropCallback callback) {
+        final RectF cropBounds = getCropBounds();
+
+        if (cropBounds == null) {
+            return null;
         }
 
-        @Override public final int left() { return anchor.x.value - threshold.value; }
-        @Override public final int top() { return anchor.y.value - threshold.value; }
-        @Override public final int right() { return anchor.x.value + threshold.value; }
-        @Override public final int bottom() { return anchor.y.value + threshold.value; }
+        final CropOptions cropOptions = (options != null ? new CropOptions(options) : new CropOptions()).setMask(mMask);
+
+        if (cropOptions.getBitmapPool() == null) {
+            cropOptions.setBitmapPool(mBitmapPool);
+        }
 
+        return RegionCropper.crop(source, cropBounds, cropOptions, callback);
     }
 
-    private static abstract class TouchHandle {
+    public final OnCropChangeListener getOnCropChangeListener() {
+        return mOnCropChangeListener;
+    }
 
-        final Point anchor;
-        final Bounds touchArea;
-        final Bounds dragBounds;
-        final Point touchPoint;
+    /**
+     * @param cropBounds the caller owned rectangle into which the RELATIVE ([0..1]) crop bounds are
+     * written before each callback, so that no rectangle is allocated (if null, the crop marker
+     * allocates one)
+     */
+    public final void setOnCropChangeListener(final OnCropChangeListener onCropChangeListener, final RectF cropBounds) {
+        cancelCropChanged();
 
-        TouchHandle(final Point anchor, final Bounds touchArea, final Bounds dragBounds) {
-            this.anchor = anchor;
-            this.touchArea = touchArea;
-            this.dragBounds = dragBounds;
-            this.touchPoint = new Point(new MInt(0), new MInt(0));
-        }
+        mOnCropChangeListener = onCropChangeListener;
+        mCropChangeBounds = onCropChangeListener != null ? (cropBounds != null ? cropBounds : new RectF()) : null;
+    }
 
-        double grabMatch(final int x, final int y) {
-            if (touchArea.contains(x, y)) {
-                return Math.sqrt(Math.pow(anchor.x.value - x, 2) + Math.pow(anchor.y.value - y, 2));
-            }
+    public int getCropChangeDispatch() {
+        return mCropChangeDispatch;
+    }
 
-            return Double.NaN;
+    /**
+     * Determines how often {@link OnCropChangeListener#onCropChanged(CropMarker, RectF, boolean)} is
+     * called: on every change ({@link #CROP_CHANGE_DISPATCH_EVENT}), at most once per frame
+     * ({@link #CROP_CHANGE_DISPATCH_FRAME}) or at most once per crop change interval
+     * ({@link #CROP_CHANGE_DISPATCH_INTERVAL}). The coalesced changes are delivered with the latest
+     * crop bounds. A change still pending under the previous dispatch is delivered immediately.
+     */
+    public void setCropChangeDispatch(final int cropChangeDispatch) {
+        if (mCropChangeDispatch == cropChangeDispatch) {
+            return;
         }
 
-        boolean grab(final int x, final int y) {
-            if (touchArea.contains(x, y)) {
-                touchPoint.x.value = x - anchor.x.value;
-                touchPoint.y.value = y - anchor.y.value;
-                return true;
-            }
+        mCropChangeDispatch = cropChangeDispatch;
 
-            return false;
-        }
-
-        void move(final int x, final int y) {
-            moveHandle(
-                    Math.min(Math.max(dragBounds.left(), x - touchPoint.x.value), dragBounds.right()),
-                    Math.min(Math.max(dragBounds.top(), y - touchPoint.y.value), dragBounds.bottom()));
+        if (mCropChangePending) {
+            dispatchCropChanged();
         }
+    }
 
-        abstract void moveHandle(int x, int y);
-
-        void release() {
-            touchPoint.x.value = 0;
-            touchPoint.y.value = 0;
-        }
+    public int getCropChangeInterval() {
+        return mCropChangeInterval;
+    }
 
+    /**
+     * @param cropChangeInterval the minimum time, in milliseconds, between two crop change callbacks
+     * with {@link #CROP_CHANGE_DISPATCH_INTERVAL}
+     */
+    public void setCropChangeInterval(final int cropChangeInterval) {
+        mCropChangeInterval = Math.max(0, cropChangeInterval);
     }
 
-    private static final class PointTouchHandle extends TouchHandle {
+    public final MetricsListener getMetricsListener() {
+        return mMetricsListener;
+    }
 
-        private final MFloat mAspectRatio;
-        private final Point mAspectRatioAnchor;
+    /**
+     * Starts (or, with a null listener, stops) recording the draw & touch handling times of the
+     * crop marker. While no listener is set, nothing is measured.
+     */
+    public final void setMetricsListener(final MetricsListener metricsListener) {
+        mMetricsListener = metricsListener;
+        mFrameTouchEvents = 0;
 
-        private final RectBounds mAspectRatioBounds;
+        if (mMetricsListener != null && mMetrics == null) {
+            mMetrics = new CropMetrics();
+        }
+    }
 
-        private float mDragLineSlope;
-        private float mDragLineYIntercept;
+    /**
+     * @return the metrics recorded since the first metrics listener was set, or null if none was
+     */
+    public final CropMetrics getMetrics() {
+        return mMetrics;
+    }
 
-        PointTouchHandle(final Point point, final MInt touchThreshold, final Bounds dragBounds, final MFloat aspectRatio, final Point aspectRatioAnchor) {
-            super(point, new AnchorBounds(point, touchThreshold), dragBounds);
+    public final BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
 
-            this.mAspectRatio = aspectRatio;
-            this.mAspectRatioAnchor = aspectRatioAnchor;
-            this.mAspectRatioBounds = mAspectRatio != null ? new RectBounds() : null;
+    /**
+     * The pool used by {@link #crop(CropSource, CropOptions, CropCallback)} when the crop options do
+     * not specify one. The same pool can be shared by several crop markers.
+     */
+    public final void setBitmapPool(final BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
 
-            this.mDragLineSlope = Float.NaN;
-            this.mDragLineYIntercept = Float.NaN;
+    private final void reset() {
+        mGeometry.setBounds(getWidth(), getHeight());
+        mGeometry.reset();
+
+        invalidateGeometry();
+        notifyCropChanged(false, false);
+    }
+
+    /**
+     * Reports a crop change to the listener, as configured by the crop change dispatch.
+     *
+     * @param fromUser true if the change comes from a drag
+     * @param inFrame true if called from a frame callback, i.e. at most once per frame
+     */
+    private void notifyCropChanged(final boolean fromUser, final boolean inFrame) {
+        if (mOnCropChangeListener == null) {
+            return;
         }
 
-        @Override
-        final boolean grab(int x, int y) {
-            final boolean grabbed = super.grab(x, y);
-
-            mDragLineSlope = Float.NaN;
-            mDragLineYIntercept = Float.NaN;
-
-            if (grabbed && mAspectRatio != null && !Float.isNaN(mAspectRatio.value) && Float.compare(mAspectRatio.value, 0F) > 0) {
-                // In order to keep an aspect ratio, we need to compute a drag line along which we
-                // are allowed to move this touch handle. This line needs to start from the aspect
-                // ratio anchor point and have the appropriate slope. In order to compute the slope,
-                // we consider an imaginary point on that line. The X coordinate of this imaginary
-                // line point is distanced from the aspect ratio anchor point by a POSITIVE factor,
-                // in the direction of this handle's position. Using this X coordinate, we can
-                // compute a matching Y value which respects the aspect ratio in relation to the
-                // aspect ration anchor point. There will be 2 matching Y values, but we will consider
-                // the one which is in the direction of the handle. Once we have the X,Y point, we
-                // can compute the drag line slope & Y intercept (line equation). We then need to
-                // define the limits of the drag line and we do this by intersecting it with the
-                // drag bounds rectangle. The rectangle enclosing these intersection points represents
-                // the bounds of this handle where the aspect ratio can be respected.
-
-                // Compute the direction of this handle in relation to the aspect ratio anchor
-                final int handleXDirection = anchor.x.value - mAspectRatioAnchor.x.value < 0 ? -1 : 1;
-                final int handleYDirection = anchor.y.value - mAspectRatioAnchor.y.value < 0 ? -1 : 1;
-
-                // Define a POSITIVE X axis distance from the aspect ratio anchor point
-                final float factor = 100;
-
-                // Compute the X value of the imaginary point heading towards this handle
-                final PointF linePoint = new PointF();
-                linePoint.x = mAspectRatioAnchor.x.value + (handleXDirection * factor);
-
-                // Compute the two possible values for the imaginary point Y value
-                final float pY1 = mAspectRatioAnchor.y.value - factor / mAspectRatio.value;
-                final float pY2 = mAspectRatioAnchor.y.value + factor / mAspectRatio.value;
-
-                // Choose the Y value which respects the direction of the handle
-                if (handleYDirection == (pY1 - mAspectRatioAnchor.y.value < 0 ? -1 : 1)) {
-                    linePoint.y = Math.round(pY1);
-                } else if (handleYDirection == (pY2 - mAspectRatioAnchor.y.value < 0 ? -1 : 1)) {
-                    linePoint.y = Math.round(pY2);
-                }
+        mCropChangeFromUser |= fromUser;
 
-                // Compute the drag line rise & run (needed to compute the slope)
-
-                /* line_rise = y2 - y1 */
-                /* line_run = x2 - x1 */
-                /* line_slope = line_rise / lineRun */
-                final float lineRise = mAspectRatioAnchor.y.value - linePoint.y;
-                final float lineRun = mAspectRatioAnchor.x.value - linePoint.x;
+        if (mCropChangeDispatch == CROP_CHANGE_DISPATCH_FRAME && !inFrame) {
+            if (!mCropChangePending) {
+                mCropChangePending = true;
+                Choreographer.getInstance().postFrameCallback(mCropChangeFrameCallback);
+            }
+        } else if (mCropChangeDispatch == CROP_CHANGE_DISPATCH_INTERVAL) {
+            final long elapsed = SystemClock.uptimeMillis() - mCropChangeDispatchTime;
+
+            if (elapsed >= mCropChangeInterval) {
+                dispatchCropChanged();
+            } else if (!mCropChangePending) {
+                // The latest change is delivered once the interval has elapsed
+                mCropChangePending = true;
+                postDelayed(mCropChangeIntervalCallback, mCropChangeInterval - elapsed);
+            }
+        } else {
+            dispatchCropChanged();
+        }
+    }
 
-                // Check if the drag line is vertical (which is not supported)
-                if (Float.compare(lineRun, 0F) != 0) {
-                    // Compute the slope & the Y intercept of the drag line equation
+    private void dispatchCropChanged() {
+        final boolean fromUser = mCropChangeFromUser;
 
-                    /* y = line_slope * x + yIntercept */
+        cancelCropChanged();
 
-                    mDragLineSlope = lineRise / lineRun;
-                    mDragLineYIntercept = linePoint.y - (mDragLineSlope * linePoint.x);
+        mCropChangeDispatchTime = SystemClock.uptimeMillis();
 
-                    final int dragBoundsLeft = dragBounds.left();
-                    final int dragBoundsTop = dragBounds.top();
-                    final int dragBoundsRight = dragBounds.right();
-                    final int dragBoundsBottom = dragBounds.bottom();
+        if (mOnCropChangeListener != null && getCropBounds(mCropChangeBounds) != null) {
+            mOnCropChangeListener.onCropChanged(this, mCropChangeBounds, fromUser);
+        }
+    }
 
-                    // Compute the intersection points of the drag line and the free drag bounds
-                    final PointF[] intersectionPoints = new PointF[4];
-                    intersectionPoints[0] = new PointF(dragBoundsLeft, mDragLineSlope * dragBoundsLeft + mDragLineYIntercept);
-                    intersectionPoints[1] = new PointF((dragBoundsTop - mDragLineYIntercept) / mDragLineSlope, dragBoundsTop);
-                    intersectionPoints[2] = new PointF(dragBoundsRight, mDragLineSlope * dragBoundsRight + mDragLineYIntercept);
-                    intersectionPoints[3] = new PointF((dragBoundsBottom - mDragLineYIntercept) / mDragLineSlope, dragBoundsBottom);
+    private void cancelCropChanged() {
+        if (mCropChangePending) {
+            Choreographer.getInstance().removeFrameCallback(mCropChangeFrameCallback);
+            removeCallbacks(mCropChangeIntervalCallback);
+            mCropChangePending = false;
+        }
 
-                    mAspectRatioBounds.set(anchor.x.value, anchor.y.value, anchor.x.value, anchor.y.value);
+        mCropChangeFromUser = false;
+    }
+
+    /**
+     * Notified of the crop bounds changes, on the main thread. All the callbacks receive the
+     * rectangle given to {@link #setOnCropChangeListener(OnCropChangeListener, RectF)}, filled with
+     * the current RELATIVE ([0..1]) crop bounds, and are only called while the crop marker is
+     * enabled and laid out.
+     */
+    public interface OnCropChangeListener {
+
+        /**
+         * Called when the user grabs the marker.
+         */
+        void onCropChangeStarted(CropMarker cropMarker, RectF cropBounds);
+
+        /**
+         * Called when the marker is dragged, set or reset, or the view is resized, as often as
+         * allowed by the crop change dispatch (see {@link #setCropChangeDispatch(int)}).
+         *
+         * @param fromUser true if the change comes from a drag. When several changes are coalesced
+         * into a single callback, true if any of them comes from a drag.
+         */
+        void onCropChanged(CropMarker cropMarker, RectF cropBounds, boolean fromUser);
+
+        /**
+         * Called when the user releases the marker, with its final bounds. Changes not yet delivered
+         * by {@link #onCropChanged(CropMarker, RectF, boolean)} are dropped.
+         */
+        void onCropChangeFinished(CropMarker cropMarker, RectF cropBounds);
+
+    }
+
+    /**
+     * The marker as RELATIVE ([0..1]) crop bounds, so that it can be restored over a view of a
+     * different size, e.g. after a rotation.
+     */
+    static class SavedState extends BaseSavedState {
+
+        boolean mHasCropBounds;
+        float mLeft;
+        float mTop;
+        float mRight;
+        float mBottom;
+
+        SavedState(final Parcelable superState) {
+            super(superState);
+        }
 
-                    // Define the more restricted bounds where the aspect ratio is respected
-                    for (PointF intersectionPoint : intersectionPoints) {
-                        if (dragBounds.contains(intersectionPoint.x, intersectionPoint.y)) {
-                            mAspectRatioBounds.add(Math.round(intersectionPoint.x), Math.round(intersectionPoint.y));
-                        }
-                    }
-                }
-            }
+        private SavedState(final Parcel source) {
+            super(source);
 
-            return grabbed;
+            mHasCropBounds = source.readInt() != 0;
+            mLeft = source.readFloat();
+            mTop = source.readFloat();
+            mRight = source.readFloat();
+            mBottom = source.readFloat();
         }
 
         @Override
-        final void moveHandle(final int x, final int y) {
-            float transformedX = x;
-            float transformedY = y;
-
-            if (!Float.isNaN(mDragLineSlope)) {
-                // In order to compute a point on the drag line corresponding to the touch point,
-                // we compute a perpendicular projection line from the touch point to the drag line.
-
-                // perpendicular_slope = -1 / line_slope
-                final float perpendicularLineSlope = -1 / mDragLineSlope;
-                final float perpendicularLineYIntercept = transformedY - (perpendicularLineSlope * transformedX);
+        public void writeToParcel(final Parcel out, final int flags) {
+            super.writeToParcel(out, flags);
+
+            out.writeInt(mHasCropBounds ? 1 : 0);
+            out.writeFloat(mLeft);
+            out.writeFloat(mTop);
+            out.writeFloat(mRight);
+            out.writeFloat(mBottom);
+        }
 
-                // Compute the projected point
-                transformedX = (perpendicularLineYIntercept - mDragLineYIntercept) / (mDragLineSlope - perpendicularLineSlope);
-                transformedY = mDragLineSlope * transformedX + mDragLineYIntercept;
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(final Parcel source) {
+                return new SavedState(source);
+            }
 
-                // Limit the projection point to the scaling bounds
-                transformedX = Math.min(Math.max(mAspectRatioBounds.left(), transformedX), mAspectRatioBounds.right());
-                transformedY = Math.min(Math.max(mAspectRatioBounds.top(), transformedY), mAspectRatioBounds.bottom());
+            @Override
+            public SavedState[] newArray(final int size) {
+                return new SavedState[size];
             }
+        };
 
-            anchor.x.value = Math.round(transformedX);
-            anchor.y.value = Math.round(transformedY);
-        }
+    }
 
-        @Override
-        final void release() {
-            super.release();
+    public interface MetricsListener {
+
+        /**
+         * Called on the main thread after each frame drawn by the crop marker.
+         *
+         * @param drawTime the time spent drawing the frame, in nanoseconds
+         * @param touchEvents the number of touch events handled since the previous frame
+         * @param metrics the histograms of all the recorded frames & touch events
+         */
+        void onFrameMetrics(long drawTime, int touchEvents, CropMetrics metrics);
 
-            mDragLineSlope = Float.NaN;
-            mDragLineYIntercept = Float.NaN;
-        }
     }
 
-    private static final class AreaTouchHandle extends TouchHandle {
+    @TargetApi(Build.VERSION_CODES.Q)
+    private static final class DecorationRenderNode {
 
-        final MInt left;
-        final MInt top;
-        final MInt right;
-        final MInt bottom;
+        private final RenderNode mRenderNode = new RenderNode(CropMarker.class.getSimpleName());
 
-        AreaTouchHandle(final MInt left, final MInt top, final MInt right, final MInt bottom, final Bounds dragBounds) {
-            super(new Point(left, top), new RectBounds(left, top, right, bottom), dragBounds);
+        // The marker rectangle at the time of the recording
+        private float mRecordedLeft;
+        private float mRecordedTop;
+        private float mRecordedWidth;
+        private float mRecordedHeight;
 
-            this.left = left;
-            this.top = top;
-            this.right = right;
-            this.bottom = bottom;
-        }
+        final void draw(final CropMarker cropMarker, final Canvas canvas, final boolean dirty) {
+            final float left = cropMarker.mGeometry.getLeft();
+            final float top = cropMarker.mGeometry.getTop();
+            final float width = cropMarker.mGeometry.getRight() - left;
+            final float height = cropMarker.mGeometry.getBottom() - top;
 
-        @Override
-        final double grabMatch(final int x, final int y) {
-            if (touchArea.contains(x, y)) {
-                return Math.sqrt(Math.pow(((left.value + right.value) * 0.5F) - x, 2) + Math.pow(((top.value + bottom.value) * 0.5F) - y, 2));
+            final boolean resized = mRenderNode.setPosition(0, 0, cropMarker.getWidth(), cropMarker.getHeight());
+
+            if (dirty || resized || !mRenderNode.hasDisplayList() ||
+                    Float.compare(width, mRecordedWidth) != 0 || Float.compare(height, mRecordedHeight) != 0) {
+                final RecordingCanvas recordingCanvas = mRenderNode.beginRecording();
+
+                try {
+                    cropMarker.drawMarkerContent(recordingCanvas);
+                } finally {
+                    mRenderNode.endRecording();
+                }
+
+                mRecordedLeft = left;
+                mRecordedTop = top;
+                mRecordedWidth = width;
+                mRecordedHeight = height;
             }
 
-            return Double.NaN;
+            canvas.save();
+            canvas.translate(left - mRecordedLeft, top - mRecordedTop);
+            canvas.drawRenderNode(mRenderNode);
+            canvas.restore();
         }
 
-        @Override
-        final void moveHandle(final int x, final int y) {
-            final int deltaX = x - left.value;
-            final int deltaY = y - top.value;
-
-            left.value = x;
-            top.value = y;
-            right.value += deltaX;
-            bottom.value += deltaY;
+        final void discard() {
+            mRenderNode.discardDisplayList();
         }
 
     }
@@ -0,0 +1,158 @@
+package com.codevblocks.android.cropmarker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Performance metrics of a {@link CropMarker}, aggregated into histograms (see
+ * {@link CropMarker#setMetricsListener(CropMarker.MetricsListener)}). The metrics are recorded on
+ * the main thread and can be read or reset from any thread, e.g. by a periodic telemetry upload.
+ */
+public final class CropMetrics {
+
+    private final Histogram mDrawTime = new Histogram();
+    private final Histogram mTouchTime = new Histogram();
+    private final Histogram mTouchEventsPerFrame = new Histogram();
+
+    CropMetrics() {
+    }
+
+    /**
+     * @return the time spent in {@link CropMarker#onDraw(android.graphics.Canvas)}, in nanoseconds, per frame
+     */
+    public Histogram getDrawTime() {
+        return mDrawTime;
+    }
+
+    /**
+     * @return the time spent handling each touch event, in nanoseconds
+     */
+    public Histogram getTouchTime() {
+        return mTouchTime;
+    }
+
+    /**
+     * @return the number of touch events handled between two drawn frames
+     */
+    public Histogram getTouchEventsPerFrame() {
+        return mTouchEventsPerFrame;
+    }
+
+    public void reset() {
+        mDrawTime.reset();
+        mTouchTime.reset();
+        mTouchEventsPerFrame.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "CropMetrics{drawTime=" + mDrawTime + ", touchTime=" + mTouchTime + ", touchEventsPerFrame=" + mTouchEventsPerFrame + "}";
+    }
+
+    /**
+     * A lock-free histogram of non-negative values, in power of 2 buckets: bucket 0 counts the 0
+     * values and bucket i > 0 counts the values in [2^(i-1), 2^i). Recording a value is a few atomic
+     * increments, without allocation. Reads are not atomic as a whole: a histogram read while
+     * values are recorded may be off by these values.
+     */
+    public static final class Histogram {
+
+        public static final int BUCKETS = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(long value) {
+            value = Math.max(0L, value);
+
+            mBuckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getSum() {
+            return mSum.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public double getMean() {
+            final long count = mCount.get();
+            return count > 0 ? (double) mSum.get() / count : 0.0;
+        }
+
+        /**
+         * @return the number of values recorded in the bucket
+         */
+        public long getBucketCount(final int bucket) {
+            return mBuckets.get(bucket);
+        }
+
+        /**
+         * @return the exclusive upper bound of the values counted in the bucket
+         */
+        public static long getBucketUpperBound(final int bucket) {
+            return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+        }
+
+        /**
+         * @param percentile in [0..100]
+         * @return an upper estimate of the percentile, i.e. the upper bound of the bucket which
+         * contains it (but no more than the max), or 0 if no value was recorded
+         */
+        public long getPercentile(final double percentile) {
+            long remaining = (long) Math.ceil(mCount.get() * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+
+            if (remaining <= 0) {
+                return 0L;
+            }
+
+            for (int i = 0; i < BUCKETS; ++i) {
+                remaining -= mBuckets.get(i);
+
+                if (remaining <= 0) {
+                    return i == 0 ? 0L : Math.min(getBucketUpperBound(i) - 1, mMax.get());
+                }
+            }
+
+            return mMax.get();
+        }
+
+        /**
+         * Clears the histogram. Values recorded concurrently may be partially cleared.
+         */
+        public void reset() {
+            for (int i = 0; i < BUCKETS; ++i) {
+                mBuckets.set(i, 0L);
+            }
+
+            mCount.set(0L);
+            mSum.set(0L);
+            mMax.set(0L);
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50) +
+                    ", p90=" + getPercentile(90) + ", p99=" + getPercentile(99) + ", max=" + getMax() + "}";
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+
+public class CropOptions {
+
+    private int mRequestedWidth;
+    private int mRequestedHeight;
+    private Bitmap.Config mConfig;
+    private int mMask;
+    private BitmapPool mBitmapPool;
+    private int mOrientation;
+
+    public CropOptions() {
+        this.mRequestedWidth = 0;
+        this.mRequestedHeight = 0;
+        this.mConfig = Bitmap.Config.ARGB_8888;
+        this.mMask = CropMarker.MASK_RECTANGLE;
+        this.mBitmapPool = null;
+        this.mOrientation = ExifInterface.ORIENTATION_NORMAL;
+    }
+
+    public CropOptions(final CropOptions options) {
+        this.mRequestedWidth = options.mRequestedWidth;
+        this.mRequestedHeight = options.mRequestedHeight;
+        this.mConfig = options.mConfig;
+        this.mMask = options.mMask;
+        this.mBitmapPool = options.mBitmapPool;
+        this.mOrientation = options.mOrientation;
+    }
+
+    public int getRequestedWidth() {
+        return mRequestedWidth;
+    }
+
+    public int getRequestedHeight() {
+        return mRequestedHeight;
+    }
+
+    /**
+     * The cropped region is subsampled by the largest power of 2 which still keeps the output at
+     * least as large as the requested size. A value of 0 does not limit the respective dimension.
+     */
+    public CropOptions setRequestedSize(final int width, final int height) {
+        this.mRequestedWidth = Math.max(0, width);
+        this.mRequestedHeight = Math.max(0, height);
+        return this;
+    }
+
+    public Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    public CropOptions setConfig(final Bitmap.Config config) {
+        this.mConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+        return this;
+    }
+
+    public int getMask() {
+        return mMask;
+    }
+
+    /**
+     * With {@link CropMarker#MASK_OVAL}, the pixels outside of the oval inscribed in the crop
+     * rectangle are made fully transparent while cropping, and the output always has an alpha
+     * channel ({@link Bitmap.Config#ARGB_8888}).
+     */
+    public CropOptions setMask(final int mask) {
+        this.mMask = mask;
+        return this;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * If not null, the crop decodes into a pooled bitmap of the exact output size and config, when
+     * there is one, and takes the decoder temporary storage from the pool. The cropped bitmap is
+     * owned by the caller, who can return it to the pool once done with it.
+     */
+    public CropOptions setBitmapPool(final BitmapPool bitmapPool) {
+        this.mBitmapPool = bitmapPool;
+        return this;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * The EXIF orientation of the source ({@link ExifInterface#ORIENTATION_NORMAL},
+     * {@link ExifInterface#ORIENTATION_ROTATE_90}, ...). The crop bounds are then relative to the
+     * upright source: they are mapped to the stored source (see
+     * {@link CropMarker#mapCropBounds(RectF, int, RectF)}), the region is decoded as stored and only
+     * the cropped output is rotated upright.
+     */
+    public CropOptions setOrientation(final int orientation) {
+        this.mOrientation = orientation;
+        return this;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.BitmapRegionDecoder;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An encoded (JPEG, PNG, WebP, ...) image to be cropped. Only the cropped region of the image is
+ * ever decoded.
+ */
+public abstract class CropSource {
+
+    CropSource() {
+    }
+
+    public static CropSource fromFile(final File file) {
+        return new CropSource() {
+            @Override
+            @SuppressWarnings("deprecation")
+            BitmapRegionDecoder newDecoder() throws IOException {
+                return BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+            }
+
+            @Override
+            public String toString() {
+                return file.getAbsolutePath();
+            }
+        };
+    }
+
+    public static CropSource fromFileDescriptor(final FileDescriptor fileDescriptor) {
+        return new CropSource() {
+            @Override
+            @SuppressWarnings("deprecation")
+            BitmapRegionDecoder newDecoder() throws IOException {
+                return BitmapRegionDecoder.newInstance(fileDescriptor, false);
+            }
+        };
+    }
+
+    /**
+     * The stream is consumed by the first decode, so the returned source can only be cropped once.
+     * The stream is not closed.
+     */
+    public static CropSource fromInputStream(final InputStream inputStream) {
+        return new CropSource() {
+            @Override
+            @SuppressWarnings("deprecation")
+            BitmapRegionDecoder newDecoder() throws IOException {
+                return BitmapRegionDecoder.newInstance(inputStream, false);
+            }
+        };
+    }
+
+    abstract BitmapRegionDecoder newDecoder() throws IOException;
+
+}
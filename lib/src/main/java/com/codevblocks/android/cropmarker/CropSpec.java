@@ -0,0 +1,112 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.RectF;
+
+/**
+ * A crop marker configuration which can be applied to any number of images, regardless of their
+ * size: the RELATIVE ([0..1]) crop rectangle, the width/height aspect ratio and the mask.
+ * <p>
+ * For storage, e.g. in a database, a spec can be flattened into a float array (see
+ * {@link #toArray()}) and the crop bounds alone can be packed into a long (see
+ * {@link #packCropBounds(RectF)}).
+ */
+public final class CropSpec {
+
+    /** The length of the {@link #toArray()} arrays */
+    public static final int ARRAY_LENGTH = 6;
+
+    // Packed crop bounds coordinates are stored as 16 bit fractions of the source size
+    private static final int PACKED_BITS = 16;
+    private static final int PACKED_MAX = (1 << PACKED_BITS) - 1;
+
+    final RectF mCropBounds;
+    final float mAspectRatio;
+    final int mMask;
+
+    /**
+     * @param cropBounds the RELATIVE ([0..1]) crop rectangle, as returned by {@link CropMarker#getCropBounds()}
+     * @param aspectRatio if greater than 0, the width/height aspect ratio, in source pixels, to which
+     * the crop rectangle is reduced around its center for each image
+     * @param mask {@link CropMarker#MASK_RECTANGLE} or {@link CropMarker#MASK_OVAL}
+     */
+    public CropSpec(final RectF cropBounds, final float aspectRatio, final int mask) {
+        this.mCropBounds = new RectF(cropBounds);
+        this.mAspectRatio = aspectRatio;
+        this.mMask = mask;
+    }
+
+    public RectF getCropBounds() {
+        return new RectF(mCropBounds);
+    }
+
+    public float getAspectRatio() {
+        return mAspectRatio;
+    }
+
+    public int getMask() {
+        return mMask;
+    }
+
+    /**
+     * @return {left, top, right, bottom, aspectRatio, mask}
+     */
+    public float[] toArray() {
+        return new float[] {
+                mCropBounds.left,
+                mCropBounds.top,
+                mCropBounds.right,
+                mCropBounds.bottom,
+                mAspectRatio,
+                mMask
+        };
+    }
+
+    /**
+     * @param array as returned by {@link #toArray()}
+     */
+    public static CropSpec fromArray(final float[] array) {
+        if (array == null || array.length < ARRAY_LENGTH) {
+            throw new IllegalArgumentException("Expected at least " + ARRAY_LENGTH + " values");
+        }
+
+        return new CropSpec(new RectF(array[0], array[1], array[2], array[3]), array[4], (int) array[5]);
+    }
+
+    /**
+     * Packs RELATIVE ([0..1]) crop bounds into a long, with a precision of 1/65535 of the source
+     * size (well under a pixel for sources up to 65535 pixels wide & tall).
+     */
+    public static long packCropBounds(final RectF cropBounds) {
+        return (pack(cropBounds.left) << (3 * PACKED_BITS)) |
+                (pack(cropBounds.top) << (2 * PACKED_BITS)) |
+                (pack(cropBounds.right) << PACKED_BITS) |
+                pack(cropBounds.bottom);
+    }
+
+    /**
+     * @param packedCropBounds as returned by {@link #packCropBounds(RectF)}
+     * @param out receives the RELATIVE ([0..1]) crop bounds
+     */
+    public static RectF unpackCropBounds(final long packedCropBounds, final RectF out) {
+        out.set(
+                unpack(packedCropBounds >>> (3 * PACKED_BITS)),
+                unpack(packedCropBounds >>> (2 * PACKED_BITS)),
+                unpack(packedCropBounds >>> PACKED_BITS),
+                unpack(packedCropBounds));
+        return out;
+    }
+
+    private static long pack(final float value) {
+        return Math.round(Math.min(1F, Math.max(0F, value)) * PACKED_MAX);
+    }
+
+    private static float unpack(final long value) {
+        return (float) (value & PACKED_MAX) / PACKED_MAX;
+    }
+
+    @Override
+    public String toString() {
+        return "CropSpec{" + mCropBounds.toShortString() + ", aspectRatio=" + mAspectRatio + ", mask=" + mMask + "}";
+    }
+
+}
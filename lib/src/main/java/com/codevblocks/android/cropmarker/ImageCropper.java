@@ -0,0 +1,253 @@
+package com.codevblocks.android.cropmarker;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.Image;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crops camera frames ({@link Image}s, e.g. from an {@link android.media.ImageReader}) to the
+ * crop marker shown over their preview, without copying pixels. The crop marker rectangle is
+ * mapped to image buffer pixels, taking the sensor rotation, the mirroring and the scaling of the
+ * preview into account, and then either attached to the image as its crop rectangle, which is
+ * honored by the consumers of the image (e.g. {@link android.media.ImageWriter} and
+ * {@link android.media.MediaCodec} input images), or exposed as views of the image planes. When
+ * the samples are needed in a packed buffer, only the YUV samples inside the crop rectangle are
+ * copied (see {@link #copyYuv(Image, Rect, boolean, ByteBuffer)}).
+ * <p>
+ * The methods taking {@link Image}s require API 19. The crop rectangle is only attached to the
+ * image from API 21.
+ */
+public final class ImageCropper {
+
+    private ImageCropper() {
+    }
+
+    /**
+     * Computes the transform from view pixels to image buffer pixels, for a preview which shows the
+     * image rotated upright, optionally mirrored, and centered in the view.
+     *
+     * @param rotationDegrees the clockwise rotation (0, 90, 180 or 270) which makes the image
+     * upright, as reported by the camera pipeline (sensor orientation relative to the display)
+     * @param mirrored true if the preview is mirrored horizontally (e.g. front camera)
+     * @param fillCenter true if the preview fills the view, cropping the image, false if it fits
+     * the image in the view
+     * @param out receives the transform
+     */
+    public static Matrix viewToImageTransform(final int viewWidth, final int viewHeight, final int imageWidth, final int imageHeight,
+                                              final int rotationDegrees, final boolean mirrored, final boolean fillCenter, final Matrix out) {
+        final boolean transposed = rotationDegrees % 180 != 0;
+        final float uprightWidth = transposed ? imageHeight : imageWidth;
+        final float uprightHeight = transposed ? imageWidth : imageHeight;
+
+        final float scale = fillCenter ?
+                Math.max(viewWidth / uprightWidth, viewHeight / uprightHeight) :
+                Math.min(viewWidth / uprightWidth, viewHeight / uprightHeight);
+
+        if (!(scale > 0F) || Float.isInfinite(scale)) {
+            out.reset();
+            return out;
+        }
+
+        // Inverse of the image to view transform (centered on the image, rotated, mirrored, scaled
+        // and centered in the view), composed step by step in reverse order
+        out.setTranslate(-0.5F * viewWidth, -0.5F * viewHeight);
+        out.postScale(1F / scale, 1F / scale);
+        if (mirrored) {
+            out.postScale(-1F, 1F);
+        }
+        out.postRotate(-rotationDegrees);
+        out.postTranslate(0.5F * imageWidth, 0.5F * imageHeight);
+
+        return out;
+    }
+
+    /**
+     * Maps a rectangle in view pixels to image buffer pixels, rounded outwards and clamped to the image.
+     *
+     * @param viewRect the rectangle in view pixels, mapped in place to (unclamped) image buffer pixels
+     */
+    public static Rect mapToImage(final RectF viewRect, final Matrix viewToImage, final int imageWidth, final int imageHeight, final Rect out) {
+        viewToImage.mapRect(viewRect);
+
+        out.set(
+                Math.max(0, (int) Math.floor(viewRect.left)),
+                Math.max(0, (int) Math.floor(viewRect.top)),
+                Math.min(imageWidth, (int) Math.ceil(viewRect.right)),
+                Math.min(imageHeight, (int) Math.ceil(viewRect.bottom))
+        );
+
+        return out;
+    }
+
+    /**
+     * Sets the crop rectangle of the image, without copying any pixel. For chroma subsampled
+     * formats, the rectangle is first expanded to even coordinates, so that it covers whole chroma
+     * samples. The image cannot be cropped further than its own {@link android.hardware.HardwareBuffer};
+     * consumers reading the buffer directly must apply the returned crop rectangle themselves.
+     * <p>
+     * {@link Image#setCropRect(Rect)} requires API 21. Below, the crop rectangle is only computed,
+     * not set on the image.
+     *
+     * @return the crop rectangle set on the image
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static Rect setCropRect(final Image image, final Rect cropRect) {
+        final Rect rect = new Rect(cropRect);
+
+        if (isChromaSubsampled(image.getFormat())) {
+            rect.set(
+                    rect.left & ~1,
+                    rect.top & ~1,
+                    Math.min(image.getWidth(), (rect.right + 1) & ~1),
+                    Math.min(image.getHeight(), (rect.bottom + 1) & ~1)
+            );
+        }
+
+        if (!rect.intersect(0, 0, image.getWidth(), image.getHeight())) {
+            rect.setEmpty();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            image.setCropRect(rect);
+        }
+
+        return rect;
+    }
+
+    /**
+     * Returns a view of the cropped region of an image plane, sharing the plane memory. The
+     * sample at (column, row) of the region is at {@code row * plane.getRowStride() + column * plane.getPixelStride()}.
+     * The view is only valid until the image is closed.
+     *
+     * @param subsampling 1 for full resolution planes (e.g. Y), 2 for the chroma planes of YUV_420_888
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static ByteBuffer planeView(final Image.Plane plane, final Rect cropRect, final int subsampling) {
+        final int rowStride = plane.getRowStride();
+        final int pixelStride = plane.getPixelStride();
+
+        final int left = cropRect.left / subsampling;
+        final int top = cropRect.top / subsampling;
+        final int width = (cropRect.right + subsampling - 1) / subsampling - left;
+        final int height = (cropRect.bottom + subsampling - 1) / subsampling - top;
+
+        final ByteBuffer buffer = plane.getBuffer().duplicate();
+
+        if (width <= 0 || height <= 0) {
+            buffer.limit(0);
+            return buffer.slice();
+        }
+
+        final int start = top * rowStride + left * pixelStride;
+        final int end = start + (height - 1) * rowStride + (width - 1) * pixelStride + 1;
+
+        buffer.limit(end);
+        buffer.position(start);
+
+        return buffer.slice();
+    }
+
+    /**
+     * Same as {@link #copyYuv(Image, Rect, boolean, ByteBuffer)}, with the crop rectangle given
+     * RELATIVE ([0..1]) to the image buffer.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static ByteBuffer copyYuv(final Image image, final RectF cropBounds, final boolean chroma, final ByteBuffer out) {
+        final Rect cropRect = RegionCropper.sourceRegion(cropBounds, image.getWidth(), image.getHeight(), new Rect());
+        return copyYuv(image, cropRect, chroma, out);
+    }
+
+    /**
+     * Copies the samples of a {@link ImageFormat#YUV_420_888} image inside the crop rectangle,
+     * without any RGB conversion, into a direct buffer, tightly packed: the Y rows, followed, if
+     * {@code chroma} is true, by the U rows and the V rows, at half resolution (I420 layout). The
+     * row and pixel strides of the planes are respected. With chroma, the crop rectangle is first
+     * expanded to even coordinates.
+     *
+     * @param out the buffer to copy into, reused if it is direct and large enough, or null
+     * @return the buffer, with its position at 0 and its limit at the end of the copied samples
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static ByteBuffer copyYuv(final Image image, final Rect cropRect, final boolean chroma, ByteBuffer out) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Unsupported image format " + image.getFormat());
+        }
+
+        final Rect rect = new Rect(cropRect);
+
+        if (chroma) {
+            rect.set(rect.left & ~1, rect.top & ~1, (rect.right + 1) & ~1, (rect.bottom + 1) & ~1);
+        }
+
+        if (!rect.intersect(0, 0, image.getWidth(), image.getHeight())) {
+            rect.setEmpty();
+        }
+
+        final int lumaBytes = rect.width() * rect.height();
+        final int chromaBytes = chroma ? ((rect.width() + 1) / 2) * ((rect.height() + 1) / 2) : 0;
+        final int bytes = lumaBytes + 2 * chromaBytes;
+
+        if (out == null || !out.isDirect() || out.capacity() < bytes) {
+            out = ByteBuffer.allocateDirect(bytes);
+        }
+
+        out.clear();
+
+        if (!rect.isEmpty()) {
+            final Image.Plane[] planes = image.getPlanes();
+
+            copyPlane(planes[0], rect, 1, out);
+
+            if (chroma) {
+                copyPlane(planes[1], rect, 2, out);
+                copyPlane(planes[2], rect, 2, out);
+            }
+        }
+
+        out.flip();
+
+        return out;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void copyPlane(final Image.Plane plane, final Rect cropRect, final int subsampling, final ByteBuffer out) {
+        final ByteBuffer buffer = plane.getBuffer().duplicate();
+        final int rowStride = plane.getRowStride();
+        final int pixelStride = plane.getPixelStride();
+
+        final int left = cropRect.left / subsampling;
+        final int top = cropRect.top / subsampling;
+        final int width = (cropRect.right + subsampling - 1) / subsampling - left;
+        final int height = (cropRect.bottom + subsampling - 1) / subsampling - top;
+
+        for (int row = 0; row < height; ++row) {
+            final int start = (top + row) * rowStride + left * pixelStride;
+
+            if (pixelStride == 1) {
+                // Bulk copy of the whole row
+                buffer.limit(start + width);
+                buffer.position(start);
+                out.put(buffer);
+                buffer.clear();
+            } else {
+                for (int column = 0, offset = start; column < width; ++column, offset += pixelStride) {
+                    out.put(buffer.get(offset));
+                }
+            }
+        }
+    }
+
+    private static boolean isChromaSubsampled(final int format) {
+        return format == ImageFormat.YUV_420_888 ||
+                format == ImageFormat.NV21 ||
+                format == ImageFormat.YV12 ||
+                format == ImageFormat.PRIVATE;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.codevblocks.android.cropmarker;
+
+/**
+ * Scanline geometry of the oval inscribed in a width x height pixel grid. A pixel belongs to the
+ * oval if its center is inside the ellipse.
+ */
+final class OvalMask {
+
+    private OvalMask() {
+    }
+
+    /**
+     * The oval is horizontally symmetric, so each row is described by the number of pixels outside
+     * of it at either end of the row: pixels [0, inset) and [width - inset, width) are outside.
+     *
+     * @return the row inset, which is at least (width + 1) / 2 if the whole row is outside
+     */
+    static int rowInset(final int row, final int width, final int height) {
+        final double radiusX = 0.5 * width;
+        final double radiusY = 0.5 * height;
+        final double dy = (row + 0.5 - radiusY) / radiusY;
+        final double dy2 = dy * dy;
+
+        if (dy2 > 1.0) {
+            return (width + 1) / 2;
+        }
+
+        final double halfSpan = radiusX * Math.sqrt(1.0 - dy2);
+
+        return Math.max(0, Math.min((width + 1) / 2, (int) Math.ceil(radiusX - halfSpan - 0.5)));
+    }
+
+}
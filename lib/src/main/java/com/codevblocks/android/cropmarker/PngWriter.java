@@ -0,0 +1,140 @@
+package com.codevblocks.android.cropmarker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal streaming PNG encoder for 8 bit RGBA images. Rows are deflated as they are written, so
+ * the encoder memory does not depend on the image size.
+ */
+final class PngWriter {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private static final byte[] CHUNK_IHDR = { 'I', 'H', 'D', 'R' };
+    private static final byte[] CHUNK_IDAT = { 'I', 'D', 'A', 'T' };
+    private static final byte[] CHUNK_IEND = { 'I', 'E', 'N', 'D' };
+
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final byte[] FILTER_NONE = { 0 };
+
+    private static final int IDAT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream mOutputStream;
+    private final Deflater mDeflater;
+    private final CRC32 mCrc;
+    private final byte[] mIntBuffer;
+    private final byte[] mIdatBuffer;
+    private int mIdatLength;
+    private boolean mClosed;
+
+    PngWriter(final OutputStream outputStream, final int width, final int height) throws IOException {
+        this.mOutputStream = outputStream;
+        this.mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.mCrc = new CRC32();
+        this.mIntBuffer = new byte[4];
+        this.mIdatBuffer = new byte[IDAT_BUFFER_SIZE];
+        this.mIdatLength = 0;
+        this.mClosed = false;
+
+        try {
+            mOutputStream.write(SIGNATURE);
+
+            final byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = BIT_DEPTH;
+            header[9] = COLOR_TYPE_RGBA;
+            header[10] = 0; // Compression: deflate
+            header[11] = 0; // Filter method: adaptive
+            header[12] = 0; // Interlace: none
+
+            writeChunk(CHUNK_IHDR, header, header.length);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param rgba the row pixels, as 4 * width bytes of non-premultiplied R, G, B, A samples
+     */
+    final void writeRow(final byte[] rgba, final int offset, final int length) throws IOException {
+        deflate(FILTER_NONE, 0, FILTER_NONE.length);
+        deflate(rgba, offset, length);
+    }
+
+    final void finish() throws IOException {
+        try {
+            mDeflater.finish();
+
+            while (!mDeflater.finished()) {
+                drain();
+            }
+
+            flushIdat();
+            writeChunk(CHUNK_IEND, mIdatBuffer, 0);
+            mOutputStream.flush();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Releases the native deflater stream. Safe to call more than once, and after {@link #finish()}.
+     */
+    final void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mDeflater.end();
+        }
+    }
+
+    private void deflate(final byte[] data, final int offset, final int length) throws IOException {
+        mDeflater.setInput(data, offset, length);
+
+        while (!mDeflater.needsInput()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        mIdatLength += mDeflater.deflate(mIdatBuffer, mIdatLength, mIdatBuffer.length - mIdatLength);
+
+        if (mIdatLength == mIdatBuffer.length) {
+            flushIdat();
+        }
+    }
+
+    private void flushIdat() throws IOException {
+        if (mIdatLength > 0) {
+            writeChunk(CHUNK_IDAT, mIdatBuffer, mIdatLength);
+            mIdatLength = 0;
+        }
+    }
+
+    private void writeChunk(final byte[] type, final byte[] data, final int length) throws IOException {
+        putInt(mIntBuffer, 0, length);
+        mOutputStream.write(mIntBuffer, 0, 4);
+        mOutputStream.write(type);
+        mOutputStream.write(data, 0, length);
+
+        mCrc.reset();
+        mCrc.update(type);
+        mCrc.update(data, 0, length);
+
+        putInt(mIntBuffer, 0, (int) mCrc.getValue());
+        mOutputStream.write(mIntBuffer, 0, 4);
+    }
+
+    private static void putInt(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+}
@@ -0,0 +1,481 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Draws the preview underneath a {@link CropMarker} from a multi-resolution tile pyramid of the
+ * source, instead of a single full size bitmap. Level 0 is the source resolution and each further
+ * level halves it, down to the level at which the whole source fits into a single tile. Tiles are
+ * decoded on demand, on a background thread, through {@link BitmapRegionDecoder}, and kept in an
+ * LRU cache keyed by source, level and tile. Drawing never blocks: missing tiles are drawn from a
+ * coarser cached level, if any, and the {@link Listener} is notified once they are decoded.
+ * <p>
+ * Except for the decoding, everything happens on the main thread.
+ */
+public final class PreviewPyramid {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "CropMarker-Preview-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Notified on the main thread when the source has been opened or a tile has been decoded, so
+     * that the preview can be redrawn.
+     */
+    public interface Listener {
+
+        void onPreviewUpdated();
+
+        void onPreviewFailed(Exception exception);
+
+    }
+
+    private final int mTileSize;
+    private final LruCache<Tile, Bitmap> mCache;
+    private final HashSet<Tile> mPending = new HashSet<>();
+
+    private final Tile mLookupTile = new Tile();
+    // The level & the inclusive column / row ranges of the tiles drawn last
+    private final Rect mViewportTiles = new Rect();
+    private int mViewportLevel = -1;
+    private final Rect mSourceRect = new Rect();
+    private final Rect mBitmapRect = new Rect();
+    private final RectF mDrawRect = new RectF();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private CropSource mSource;
+    private int mSourceWidth;
+    private int mSourceHeight;
+    private int mLevels;
+    private Listener mListener;
+
+    // Accessed on the decoding thread only
+    private CropSource mDecoderSource;
+    private BitmapRegionDecoder mDecoder;
+
+    /**
+     * @param tileSize the size, in tile pixels, of the square tiles
+     * @param cacheBytes the maximum size, in bytes, of the cached tiles
+     */
+    public PreviewPyramid(final int tileSize, final int cacheBytes) {
+        this.mTileSize = Math.max(1, tileSize);
+        this.mCache = new LruCache<Tile, Bitmap>(Math.max(1, cacheBytes)) {
+            @Override
+            protected int sizeOf(final Tile tile, final Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    public CropSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Opens the source on the background thread. Until it has been opened, nothing is drawn. The
+     * cached tiles of previous sources are kept until they are evicted, or until {@link #close()}.
+     */
+    public void setSource(final CropSource source) {
+        if (source == mSource) {
+            return;
+        }
+
+        mSource = source;
+        mSourceWidth = 0;
+        mSourceHeight = 0;
+        mLevels = 0;
+        cancelRequests();
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+                Exception exception = null;
+
+                try {
+                    openDecoder(source);
+                } catch (IOException | RuntimeException e) {
+                    exception = e;
+                }
+
+                final int width = mDecoder != null ? mDecoder.getWidth() : 0;
+                final int height = mDecoder != null ? mDecoder.getHeight() : 0;
+                final Exception error = exception;
+
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (source != mSource) {
+                            return;
+                        }
+
+                        if (error != null) {
+                            if (mListener != null) {
+                                mListener.onPreviewFailed(error);
+                            }
+                            return;
+                        }
+
+                        mSourceWidth = width;
+                        mSourceHeight = height;
+                        mLevels = levels(width, height, mTileSize);
+
+                        if (mListener != null) {
+                            mListener.onPreviewUpdated();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public int getSourceWidth() {
+        return mSourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return mSourceHeight;
+    }
+
+    /**
+     * @return the number of levels of the pyramid, or 0 if the source has not been opened yet
+     */
+    public int getLevels() {
+        return mLevels;
+    }
+
+    /**
+     * @param sourceBounds the RELATIVE ([0..1]) region of the source to be displayed, such as the
+     * bounds returned by {@link CropMarker#getCropBounds()}
+     * @param displayWidth the width, in pixels, at which the region is displayed, such as the view width
+     * @param displayHeight the height, in pixels, at which the region is displayed
+     * @return the coarsest level which still has at least one tile pixel per displayed pixel
+     */
+    public int selectLevel(final RectF sourceBounds, final float displayWidth, final float displayHeight) {
+        final float sourceWidth = sourceBounds.width() * mSourceWidth;
+        final float sourceHeight = sourceBounds.height() * mSourceHeight;
+
+        if (mLevels == 0 || sourceWidth <= 0F || sourceHeight <= 0F || displayWidth <= 0F || displayHeight <= 0F) {
+            return 0;
+        }
+
+        final float scale = Math.max(displayWidth / sourceWidth, displayHeight / sourceHeight);
+
+        int level = 0;
+        while (level + 1 < mLevels && scale * (1 << (level + 1)) <= 1F) {
+            ++level;
+        }
+
+        return level;
+    }
+
+    /**
+     * Draws the region of the source into the destination rectangle, at the level selected by
+     * {@link #selectLevel(RectF, float, float)}, and requests the missing tiles.
+     *
+     * @param sourceBounds the RELATIVE ([0..1]) region of the source to be drawn
+     * @return true if all the tiles of the selected level were available
+     */
+    public boolean draw(final Canvas canvas, final RectF sourceBounds, final RectF destination) {
+        if (mLevels == 0 || sourceBounds.isEmpty() || destination.isEmpty()) {
+            return false;
+        }
+
+        final int level = selectLevel(sourceBounds, destination.width(), destination.height());
+        final int span = mTileSize << level;
+
+        final float sourceLeft = sourceBounds.left * mSourceWidth;
+        final float sourceTop = sourceBounds.top * mSourceHeight;
+        final float scaleX = destination.width() / (sourceBounds.width() * mSourceWidth);
+        final float scaleY = destination.height() / (sourceBounds.height() * mSourceHeight);
+
+        final int firstColumn = Math.max(0, (int) Math.floor(sourceLeft / span));
+        final int firstRow = Math.max(0, (int) Math.floor(sourceTop / span));
+        final int lastColumn = Math.min((mSourceWidth - 1) / span, (int) Math.ceil(sourceBounds.right * mSourceWidth / span) - 1);
+        final int lastRow = Math.min((mSourceHeight - 1) / span, (int) Math.ceil(sourceBounds.bottom * mSourceHeight / span) - 1);
+
+        if (level != mViewportLevel || firstColumn != mViewportTiles.left || firstRow != mViewportTiles.top
+                || lastColumn != mViewportTiles.right || lastRow != mViewportTiles.bottom) {
+            mViewportLevel = level;
+            mViewportTiles.set(firstColumn, firstRow, lastColumn, lastRow);
+
+            pruneRequests();
+        }
+
+        boolean complete = true;
+
+        final int saveCount = canvas.save();
+        canvas.clipRect(destination);
+
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                tileRect(level, column, row, mSourceRect);
+
+                Bitmap bitmap = cached(level, column, row);
+                int bitmapLevel = level;
+
+                if (bitmap == null) {
+                    complete = false;
+                    request(level, column, row);
+
+                    // Until the tile is decoded, its area is drawn from the finest cached coarser level
+                    while (bitmap == null && ++bitmapLevel < mLevels) {
+                        final int shift = bitmapLevel - level;
+                        bitmap = cached(bitmapLevel, column >> shift, row >> shift);
+                    }
+                }
+
+                if (bitmap != null) {
+                    final int bitmapSpan = mTileSize << bitmapLevel;
+                    final int bitmapLeft = (mSourceRect.left / bitmapSpan) * bitmapSpan;
+                    final int bitmapTop = (mSourceRect.top / bitmapSpan) * bitmapSpan;
+                    final float bitmapScaleX = (float) bitmap.getWidth() / (Math.min(bitmapLeft + bitmapSpan, mSourceWidth) - bitmapLeft);
+                    final float bitmapScaleY = (float) bitmap.getHeight() / (Math.min(bitmapTop + bitmapSpan, mSourceHeight) - bitmapTop);
+
+                    mBitmapRect.set(
+                            Math.round((mSourceRect.left - bitmapLeft) * bitmapScaleX),
+                            Math.round((mSourceRect.top - bitmapTop) * bitmapScaleY),
+                            Math.round((mSourceRect.right - bitmapLeft) * bitmapScaleX),
+                            Math.round((mSourceRect.bottom - bitmapTop) * bitmapScaleY)
+                    );
+
+                    mDrawRect.set(
+                            destination.left + (mSourceRect.left - sourceLeft) * scaleX,
+                            destination.top + (mSourceRect.top - sourceTop) * scaleY,
+                            destination.left + (mSourceRect.right - sourceLeft) * scaleX,
+                            destination.top + (mSourceRect.bottom - sourceTop) * scaleY
+                    );
+
+                    canvas.drawBitmap(bitmap, mBitmapRect, mDrawRect, mPaint);
+                }
+            }
+        }
+
+        canvas.restoreToCount(saveCount);
+
+        return complete;
+    }
+
+    /**
+     * Drops the cached tiles of all sources and releases the decoder.
+     */
+    public void close() {
+        mSource = null;
+        mSourceWidth = 0;
+        mSourceHeight = 0;
+        mLevels = 0;
+        cancelRequests();
+        mCache.evictAll();
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeDecoder();
+            }
+        });
+    }
+
+    private Bitmap cached(final int level, final int column, final int row) {
+        return mCache.get(mLookupTile.set(mSource, level, column, row));
+    }
+
+    private void request(final int level, final int column, final int row) {
+        if (mPending.contains(mLookupTile.set(mSource, level, column, row))) {
+            return;
+        }
+
+        final Tile tile = new Tile().set(mSource, level, column, row);
+        mPending.add(tile);
+
+        final Rect region = tileRect(level, column, row, new Rect());
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+                // Requests for a previous source or out of the viewport are dropped
+                if (tile.cancelled || tile.source != mDecoderSource || mDecoder == null) {
+                    return;
+                }
+
+                final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inSampleSize = 1 << tile.level;
+
+                Bitmap bitmap;
+
+                try {
+                    bitmap = mDecoder.decodeRegion(region, decodeOptions);
+                } catch (RuntimeException e) {
+                    bitmap = null;
+                }
+
+                final Bitmap result = bitmap;
+
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A cancelled tile is no longer pending, but an equal tile may have been
+                        // requested again since
+                        if (!tile.cancelled) {
+                            mPending.remove(tile);
+                        }
+
+                        if (result == null || tile.source != mSource) {
+                            return;
+                        }
+
+                        mCache.put(tile, result);
+
+                        if (mListener != null) {
+                            mListener.onPreviewUpdated();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending requests for the tiles which are not in the viewport, so that a fling or
+     * a zoom does not leave the decoding thread busy with tiles which are no longer displayed.
+     */
+    private void pruneRequests() {
+        final Iterator<Tile> iterator = mPending.iterator();
+
+        while (iterator.hasNext()) {
+            final Tile tile = iterator.next();
+
+            if (tile.level != mViewportLevel || !(tile.column >= mViewportTiles.left && tile.column <= mViewportTiles.right
+                    && tile.row >= mViewportTiles.top && tile.row <= mViewportTiles.bottom)) {
+                tile.cancelled = true;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Cancels all the pending requests, so that the decoding thread does not decode the tiles of a
+     * source which is no longer displayed ahead of the next source.
+     */
+    private void cancelRequests() {
+        for (final Tile tile : mPending) {
+            tile.cancelled = true;
+        }
+
+        mPending.clear();
+    }
+
+    private Rect tileRect(final int level, final int column, final int row, final Rect rect) {
+        final int span = mTileSize << level;
+
+        rect.set(
+                column * span,
+                row * span,
+                Math.min((column + 1) * span, mSourceWidth),
+                Math.min((row + 1) * span, mSourceHeight)
+        );
+
+        return rect;
+    }
+
+    private void openDecoder(final CropSource source) throws IOException {
+        closeDecoder();
+
+        mDecoderSource = source;
+        mDecoder = source != null ? source.newDecoder() : null;
+    }
+
+    private void closeDecoder() {
+        if (mDecoder != null) {
+            mDecoder.recycle();
+        }
+
+        mDecoder = null;
+        mDecoderSource = null;
+    }
+
+    private static int levels(final int width, final int height, final int tileSize) {
+        int levels = 1;
+
+        while ((width > tileSize << (levels - 1) || height > tileSize << (levels - 1)) && levels < 24) {
+            ++levels;
+        }
+
+        return levels;
+    }
+
+    private static final class Tile {
+
+        private CropSource source;
+        private int level;
+        private int column;
+        private int row;
+
+        // Set on the main thread, read on the decoding thread. Not part of the key.
+        private volatile boolean cancelled;
+
+        private Tile set(final CropSource source, final int level, final int column, final int row) {
+            this.source = source;
+            this.level = level;
+            this.column = column;
+            this.row = row;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof Tile)) {
+                return false;
+            }
+
+            final Tile tile = (Tile) object;
+            return source == tile.source && level == tile.level && column == tile.column && row == tile.row;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = System.identityHashCode(source);
+            hashCode = 31 * hashCode + level;
+            hashCode = 31 * hashCode + column;
+            hashCode = 31 * hashCode + row;
+            return hashCode;
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crops encoded images at source resolution by decoding only the cropped region, through
+ * {@link BitmapRegionDecoder}. The full image is never decoded.
+ */
+public final class RegionCropper {
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "CropMarker-Crop-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private RegionCropper() {
+    }
+
+    /**
+     * Synchronously crops the source. Must not be called on the main thread.
+     *
+     * @param cropBounds the RELATIVE ([0..1]) crop rectangle, as returned by {@link CropMarker#getCropBounds()}
+     */
+    public static Bitmap crop(final CropSource source, final RectF cropBounds, CropOptions options) throws IOException {
+        if (options == null) {
+            options = new CropOptions();
+        }
+
+        Tracing.beginSection(Tracing.REGION_CROP);
+
+        try {
+            final BitmapRegionDecoder decoder = source.newDecoder();
+
+            try {
+                return decode(source, decoder, sourceRegion(cropBounds, Float.NaN, options.getOrientation(), decoder.getWidth(), decoder.getHeight(), new Rect()), options);
+            } finally {
+                decoder.recycle();
+            }
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    static Bitmap decode(final CropSource source, final BitmapRegionDecoder decoder, final Rect region, final CropOptions options) throws IOException {
+        if (region.isEmpty()) {
+            throw new IOException("Empty crop region " + region + " for source " + source);
+        }
+
+        final boolean ovalMask = options.getMask() == CropMarker.MASK_OVAL;
+
+        final BitmapPool bitmapPool = options.getBitmapPool();
+
+        final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inPreferredConfig = ovalMask ? Bitmap.Config.ARGB_8888 : options.getConfig();
+        decodeOptions.inMutable = ovalMask || bitmapPool != null;
+        decodeOptions.inSampleSize = sampleSize(region, options);
+
+        Bitmap bitmap;
+
+        if (bitmapPool != null) {
+            // A larger inBitmap would be returned as is, with the region in its top left corner, so
+            // only an exact match can be reused. The subsampled size is decoder specific, hence
+            // pooled bitmaps are only decoded into at full resolution.
+            if (decodeOptions.inSampleSize == 1) {
+                decodeOptions.inBitmap = bitmapPool.get(region.width(), region.height(), decodeOptions.inPreferredConfig);
+            }
+
+            decodeOptions.inTempStorage = bitmapPool.acquireTempStorage();
+
+            try {
+                bitmap = decoder.decodeRegion(region, decodeOptions);
+            } catch (IllegalArgumentException e) {
+                if (decodeOptions.inBitmap == null) {
+                    throw e;
+                }
+
+                // The decoder could not reuse the pooled bitmap
+                bitmapPool.put(decodeOptions.inBitmap);
+                decodeOptions.inBitmap = null;
+
+                bitmap = decoder.decodeRegion(region, decodeOptions);
+            } finally {
+                bitmapPool.releaseTempStorage(decodeOptions.inTempStorage);
+            }
+
+            if (decodeOptions.inBitmap != null && bitmap != decodeOptions.inBitmap) {
+                bitmapPool.put(decodeOptions.inBitmap);
+            }
+        } else {
+            bitmap = decoder.decodeRegion(region, decodeOptions);
+        }
+
+        if (bitmap == null) {
+            throw new IOException("Could not decode region " + region + " of source " + source);
+        }
+
+        if (ovalMask) {
+            applyOvalMask(bitmap);
+        }
+
+        return orient(bitmap, options);
+    }
+
+    /**
+     * @return an upper estimate of the memory needed by the bitmap decoded for the region
+     */
+    static long decodedBytes(final Rect region, final CropOptions options) {
+        final int sampleSize = sampleSize(region, options);
+        final long pixels = (long) ((region.width() + sampleSize - 1) / sampleSize) * ((region.height() + sampleSize - 1) / sampleSize);
+
+        return pixels * (options.getMask() != CropMarker.MASK_OVAL && options.getConfig() == Bitmap.Config.RGB_565 ? 2 : 4);
+    }
+
+    /**
+     * Crops the source on a background thread. Unless the returned future is cancelled first, the
+     * callback is invoked on the main thread. The future completes when the callback is invoked, so
+     * it must not be waited on from the main thread.
+     */
+    public static Future<?> crop(final CropSource source, final RectF cropBounds, final CropOptions cropOptions, final CropCallback callback) {
+        final RectF bounds = new RectF(cropBounds);
+        final CropOptions options = cropOptions != null ? cropOptions : new CropOptions();
+        final CropTask task = new CropTask(source, bounds, options, callback);
+        final CropFuture future = new CropFuture(task);
+
+        task.mFuture = future;
+        EXECUTOR.execute(future);
+
+        return future;
+    }
+
+    private static final class CropTask implements Runnable {
+
+        private final CropSource mSource;
+        private final RectF mBounds;
+        private final CropOptions mOptions;
+        private final CropCallback mCallback;
+
+        // Set before the task is submitted
+        private CropFuture mFuture;
+
+        private CropTask(final CropSource source, final RectF bounds, final CropOptions options, final CropCallback callback) {
+            mSource = source;
+            mBounds = bounds;
+            mOptions = options;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            Bitmap bitmap = null;
+            Exception exception = null;
+
+            try {
+                bitmap = crop(mSource, mBounds, mOptions);
+            } catch (IOException | RuntimeException e) {
+                exception = e;
+            } catch (OutOfMemoryError e) {
+                // Reported to the callback like any other failure
+                exception = new IOException("Out of memory while cropping source " + mSource, e);
+            }
+
+            if (mFuture.isCancelled()) {
+                // Early exit, nobody will receive the bitmap
+                if (bitmap != null) {
+                    release(bitmap, mOptions);
+                }
+                return;
+            }
+
+            final Bitmap result = bitmap;
+            final Exception error = exception;
+
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mFuture.deliver()) {
+                        // Cancelled after the crop completed, the callback must not be invoked
+                        if (result != null) {
+                            release(result, mOptions);
+                        }
+                    } else if (error != null) {
+                        mCallback.onCropFailed(error);
+                    } else {
+                        mCallback.onCropped(result);
+                    }
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Completes only once the result is delivered on the main thread, so that the future can still
+     * be cancelled while the delivery is pending.
+     */
+    private static final class CropFuture extends FutureTask<Void> {
+
+        private CropFuture(final Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        protected void set(final Void value) {
+            // Completed by deliver()
+        }
+
+        /**
+         * Must be called on the main thread.
+         *
+         * @return false if the future was cancelled, in which case the result must not be delivered
+         */
+        private boolean deliver() {
+            super.set(null);
+            return !isCancelled();
+        }
+
+    }
+
+    private static void applyOvalMask(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+
+        // Only the pixels outside of the oval are written, directly in the decoded bitmap
+        final int[] transparent = new int[(width + 1) / 2];
+
+        bitmap.setHasAlpha(true);
+
+        for (int row = 0; row < height; ++row) {
+            final int inset = OvalMask.rowInset(row, width, height);
+
+            if (inset > 0) {
+                bitmap.setPixels(transparent, 0, inset, 0, row, inset, 1);
+                bitmap.setPixels(transparent, 0, inset, width - inset, row, inset, 1);
+            }
+        }
+    }
+
+    static Rect sourceRegion(final RectF cropBounds, final int sourceWidth, final int sourceHeight, final Rect region) {
+        return sourceRegion(cropBounds, Float.NaN, ExifInterface.ORIENTATION_NORMAL, sourceWidth, sourceHeight, region);
+    }
+
+    /**
+     * @param cropBounds the RELATIVE ([0..1]) crop bounds of the upright source
+     * @param aspectRatio if greater than 0, the width/height aspect ratio, in upright source pixels,
+     * to which the region is reduced around its center
+     * @param orientation the EXIF orientation of the source
+     * @return the region of the stored source
+     */
+    static Rect sourceRegion(final RectF cropBounds, float aspectRatio, final int orientation,
+                             final int sourceWidth, final int sourceHeight, final Rect region) {
+        final RectF bounds = CropMarker.mapCropBounds(cropBounds, orientation, new RectF());
+
+        if (CropMarker.isTransposed(orientation) && Float.compare(aspectRatio, 0F) > 0) {
+            aspectRatio = 1F / aspectRatio;
+        }
+
+        double left = (double) bounds.left * sourceWidth;
+        double top = (double) bounds.top * sourceHeight;
+        double right = (double) bounds.right * sourceWidth;
+        double bottom = (double) bounds.bottom * sourceHeight;
+
+        if (!Float.isNaN(aspectRatio) && Float.compare(aspectRatio, 0F) > 0 && right > left && bottom > top) {
+            final double width = right - left;
+            final double height = bottom - top;
+
+            if (width > height * aspectRatio) {
+                final double inset = 0.5 * (width - height * aspectRatio);
+                left += inset;
+                right -= inset;
+            } else {
+                final double inset = 0.5 * (height - width / aspectRatio);
+                top += inset;
+                bottom -= inset;
+            }
+        }
+
+        region.set(
+                Math.max(0, (int) Math.floor(left)),
+                Math.max(0, (int) Math.floor(top)),
+                Math.min(sourceWidth, (int) Math.ceil(right)),
+                Math.min(sourceHeight, (int) Math.ceil(bottom))
+        );
+
+        return region;
+    }
+
+    /**
+     * @return the sample size for the region of the stored source, the requested size being upright
+     */
+    private static int sampleSize(final Rect region, final CropOptions options) {
+        return CropMarker.isTransposed(options.getOrientation()) ?
+                sampleSize(region.width(), region.height(), options.getRequestedHeight(), options.getRequestedWidth()) :
+                sampleSize(region.width(), region.height(), options.getRequestedWidth(), options.getRequestedHeight());
+    }
+
+    /**
+     * Rotates the cropped bitmap upright, according to the EXIF orientation of the source.
+     */
+    private static Bitmap orient(final Bitmap bitmap, final CropOptions options) {
+        final Matrix matrix = new Matrix();
+
+        switch (options.getOrientation()) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1F, 1F);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180F);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1F, -1F);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90F);
+                matrix.postScale(-1F, 1F);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90F);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90F);
+                matrix.postScale(-1F, 1F);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90F);
+                break;
+            default:
+                return bitmap;
+        }
+
+        final Bitmap oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+
+        if (oriented != bitmap) {
+            release(bitmap, options);
+        }
+
+        return oriented;
+    }
+
+    /**
+     * Returns the bitmap to the pool of the options or, if there is none or the pool would not
+     * take it, recycles it.
+     */
+    private static void release(final Bitmap bitmap, final CropOptions options) {
+        if (options.getBitmapPool() != null && bitmap.isMutable()) {
+            options.getBitmapPool().put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    static int sampleSize(final int width, final int height, final int requestedWidth, final int requestedHeight) {
+        int sampleSize = 1;
+
+        if (requestedWidth > 0 || requestedHeight > 0) {
+            while ((requestedWidth <= 0 || width / (2 * sampleSize) >= requestedWidth) &&
+                    (requestedHeight <= 0 || height / (2 * sampleSize) >= requestedHeight)) {
+                sampleSize *= 2;
+            }
+        }
+
+        return sampleSize;
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Crops encoded images which are too large to be held in memory even once cropped. The cropped
+ * region is decoded in horizontal bands into a single reused band bitmap, and each band is
+ * streamed row by row to an encoder, so the peak memory is bounded by the band height instead of
+ * the crop size: roughly {@code 4 * cropWidth * bandHeight} bytes for the band bitmap, plus a few
+ * row buffers. The crop is always performed at the source resolution. No intermediate bitmap of
+ * the crop size is ever created, so the raw RGBA formats can also be used to fill a tightly packed
+ * pixel buffer.
+ */
+public final class StreamingCropper {
+
+    /** PNG, 8 bit RGBA, non-premultiplied */
+    public static final int FORMAT_PNG = 0;
+    /** Headerless rows of 8 bit R, G, B, A samples, non-premultiplied */
+    public static final int FORMAT_RGBA = 1;
+    /** Headerless rows of 8 bit R, G, B, A samples, premultiplied by alpha */
+    public static final int FORMAT_RGBA_PREMULTIPLIED = 2;
+
+    public static final int DEFAULT_BAND_HEIGHT = 256;
+
+    private StreamingCropper() {
+    }
+
+    /**
+     * Synchronously crops the source and encodes the result to the output stream, which is not
+     * closed. Must not be called on the main thread. Interrupting the calling thread aborts the crop
+     * with an {@link InterruptedIOException}.
+     *
+     * @param cropBounds the RELATIVE ([0..1]) crop rectangle, as returned by {@link CropMarker#getCropBounds()}
+     * @param bandHeight the height, in source pixels, of the bands in which the crop is decoded
+     * @param format {@link #FORMAT_PNG}, {@link #FORMAT_RGBA} or {@link #FORMAT_RGBA_PREMULTIPLIED}
+     * @return the cropped region, in source pixels
+     */
+    public static Rect crop(final CropSource source, final RectF cropBounds, final int bandHeight, final int format,
+                            final OutputStream outputStream) throws IOException {
+        return crop(source, cropBounds, CropMarker.MASK_RECTANGLE, bandHeight, format, outputStream);
+    }
+
+    /**
+     * Same as {@link #crop(CropSource, RectF, int, int, OutputStream)}, but also applies the mask
+     * shape. With {@link CropMarker#MASK_OVAL}, the pixels outside of the oval inscribed in the
+     * crop rectangle are written as fully transparent (all samples 0), row by row, as the crop is
+     * encoded.
+     */
+    public static Rect crop(final CropSource source, final RectF cropBounds, final int mask, final int bandHeight, final int format,
+                            final OutputStream outputStream) throws IOException {
+        return crop(source, cropBounds, mask, bandHeight, format, outputStream, null);
+    }
+
+    /**
+     * Same as {@link #crop(CropSource, RectF, int, int, int, OutputStream)}, but takes the band
+     * bitmap and the decoder temporary storage from the pool, if not null, and returns them to it
+     * once the crop is done.
+     */
+    public static Rect crop(final CropSource source, final RectF cropBounds, final int mask, final int bandHeight, final int format,
+                            final OutputStream outputStream, final BitmapPool bitmapPool) throws IOException {
+        Tracing.beginSection(Tracing.STREAMING_CROP);
+
+        try {
+            return cropBands(source, cropBounds, mask, bandHeight, format, outputStream, bitmapPool);
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    private static Rect cropBands(final CropSource source, final RectF cropBounds, final int mask, final int bandHeight, final int format,
+                                  final OutputStream outputStream, final BitmapPool bitmapPool) throws IOException {
+        final BitmapRegionDecoder decoder = source.newDecoder();
+        final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        Bitmap band = null;
+        PngWriter pngWriter = null;
+
+        try {
+            final Rect region = RegionCropper.sourceRegion(cropBounds, decoder.getWidth(), decoder.getHeight(), new Rect());
+
+            if (region.isEmpty()) {
+                throw new IOException("Empty crop region " + region + " for source " + source);
+            }
+
+            final int width = region.width();
+            final int height = region.height();
+            final int bandRows = Math.max(1, Math.min(bandHeight, height));
+
+            if (format == FORMAT_PNG) {
+                pngWriter = new PngWriter(outputStream, width, height);
+            }
+
+            band = bitmapPool != null ?
+                    bitmapPool.getOrCreate(width, bandRows, Bitmap.Config.ARGB_8888) :
+                    Bitmap.createBitmap(width, bandRows, Bitmap.Config.ARGB_8888);
+
+            decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            decodeOptions.inMutable = true;
+            decodeOptions.inTempStorage = bitmapPool != null ? bitmapPool.acquireTempStorage() : null;
+
+            final Rect bandRegion = new Rect();
+            final int[] pixels = new int[width];
+            final byte[] rgba = new byte[4 * width];
+            final boolean premultiplied = format == FORMAT_RGBA_PREMULTIPLIED;
+
+            for (int bandTop = region.top; bandTop < region.bottom; bandTop += bandRows) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Crop of source " + source + " interrupted");
+                }
+
+                bandRegion.set(region.left, bandTop, region.right, Math.min(bandTop + bandRows, region.bottom));
+
+                // The band bitmap is reused for every band. The last band may be shorter, in which
+                // case only its top rows are decoded into.
+                decodeOptions.inBitmap = band;
+                final Bitmap decoded = decoder.decodeRegion(bandRegion, decodeOptions);
+
+                if (decoded == null) {
+                    throw new IOException("Could not decode region " + bandRegion + " of source " + source);
+                }
+
+                if (decoded != band) {
+                    band.recycle();
+                    band = decoded;
+                }
+
+                for (int row = 0, rows = bandRegion.height(); row < rows; ++row) {
+                    band.getPixels(pixels, 0, width, 0, row, width, 1);
+                    toRgba(pixels, width, premultiplied, rgba);
+
+                    if (mask == CropMarker.MASK_OVAL) {
+                        final int inset = OvalMask.rowInset(bandTop - region.top + row, width, height);
+
+                        Arrays.fill(rgba, 0, 4 * inset, (byte) 0);
+                        Arrays.fill(rgba, 4 * (width - inset), 4 * width, (byte) 0);
+                    }
+
+                    if (pngWriter != null) {
+                        pngWriter.writeRow(rgba, 0, rgba.length);
+                    } else {
+                        outputStream.write(rgba, 0, rgba.length);
+                    }
+                }
+            }
+
+            if (pngWriter != null) {
+                pngWriter.finish();
+            } else {
+                outputStream.flush();
+            }
+
+            return region;
+        } finally {
+            if (pngWriter != null) {
+                pngWriter.close();
+            }
+
+            if (bitmapPool != null) {
+                bitmapPool.put(band);
+                bitmapPool.releaseTempStorage(decodeOptions.inTempStorage);
+            } else if (band != null) {
+                band.recycle();
+            }
+
+            decoder.recycle();
+        }
+    }
+
+    static void toRgba(final int[] pixels, final int width, final boolean premultiplied, final byte[] rgba) {
+        for (int i = 0, j = 0; i < width; ++i, j += 4) {
+            final int pixel = pixels[i];
+            final int alpha = pixel >>> 24;
+
+            if (premultiplied && alpha != 0xFF) {
+                rgba[j] = (byte) premultiply((pixel >> 16) & 0xFF, alpha);
+                rgba[j + 1] = (byte) premultiply((pixel >> 8) & 0xFF, alpha);
+                rgba[j + 2] = (byte) premultiply(pixel & 0xFF, alpha);
+            } else {
+                rgba[j] = (byte) (pixel >> 16);
+                rgba[j + 1] = (byte) (pixel >> 8);
+                rgba[j + 2] = (byte) pixel;
+            }
+
+            rgba[j + 3] = (byte) alpha;
+        }
+    }
+
+    private static int premultiply(final int component, final int alpha) {
+        /* Exact rounded (component * alpha) / 255 */
+        final int product = component * alpha + 128;
+        return (product + (product >> 8)) >> 8;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.codevblocks.android.cropmarker;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * {@link Trace} sections, shown in systrace & Perfetto captures. Section names are constants, so
+ * nothing is allocated and, while tracing is off, a section only costs the native enabled check.
+ * Sections must be ended on the thread which began them.
+ */
+final class Tracing {
+
+    static final String ON_DRAW = "CropMarker#onDraw";
+    static final String TOUCH_DOWN = "CropMarker#touchDown";
+    static final String TOUCH_MOVE = "CropMarker#touchMove";
+    static final String TOUCH_UP = "CropMarker#touchUp";
+    static final String GRAB = "CropMarker#grab";
+    static final String DRAG_FRAME = "CropMarker#dragFrame";
+    static final String REGION_CROP = "RegionCropper#crop";
+    static final String STREAMING_CROP = "StreamingCropper#crop";
+    static final String BATCH_CROP = "BatchCropper#crop";
+
+    // Trace is only available from API 18
+    private static final boolean SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private Tracing() {
+    }
+
+    static void beginSection(final String sectionName) {
+        if (SUPPORTED) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    static void endSection() {
+        if (SUPPORTED) {
+            Trace.endSection();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.RectF;
+import android.view.AbsSavedState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the crop bounds set or restored from a saved state are clamped to [0..1], ignored if
+ * empty or inverted, and constrained by the aspect ratio.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropMarkerCropBoundsTest {
+
+    private static final int SIZE = 1000;
+
+    private CropMarker mCropMarker;
+
+    @Before
+    public void setUp() {
+        mCropMarker = new CropMarker(RuntimeEnvironment.getApplication());
+        mCropMarker.setMinSize(50);
+    }
+
+    @Test
+    public void outOfRangeBoundsAreClamped() {
+        layout();
+        mCropMarker.setCropBounds(new RectF(-0.5F, 0.2F, 0.6F, 3F));
+
+        assertEquals(new RectF(0F, 200F, 600F, 1000F), mCropMarker.getMarker(new RectF()));
+    }
+
+    @Test
+    public void invertedAndEmptyBoundsAreIgnored() {
+        layout();
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+
+        mCropMarker.setCropBounds(new RectF(0.6F, 0.1F, 0.2F, 0.5F));
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.4F, 0.5F, 0.4F));
+        mCropMarker.setCropBounds(new RectF(1.2F, 0.1F, 1.5F, 0.5F));
+        mCropMarker.setCropBounds(new RectF(Float.NaN, 0.1F, 0.5F, 0.5F));
+
+        assertEquals(new RectF(100F, 100F, 500F, 500F), mCropMarker.getMarker(new RectF()));
+    }
+
+    @Test
+    public void restoredBoundsAreClampedAndConstrained() {
+        mCropMarker.setAspectRatio(1F);
+        mCropMarker.onRestoreInstanceState(savedState(0.5F, -0.25F, 1.25F, 0.8F));
+
+        layout();
+
+        // Clamped to (500, 0, 1000, 800), then the bottom right corner keeps the 1:1 ratio
+        assertEquals(new RectF(500F, 0F, 1000F, 500F), mCropMarker.getMarker(new RectF()));
+    }
+
+    @Test
+    public void invertedRestoredBoundsAreIgnored() {
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+        mCropMarker.onRestoreInstanceState(savedState(0.8F, 0.1F, 0.3F, 0.5F));
+
+        layout();
+
+        assertEquals(new RectF(100F, 100F, 500F, 500F), mCropMarker.getMarker(new RectF()));
+    }
+
+    private void layout() {
+        mCropMarker.layout(0, 0, SIZE, SIZE);
+    }
+
+    private static CropMarker.SavedState savedState(final float left, final float top, final float right, final float bottom) {
+        final CropMarker.SavedState savedState = new CropMarker.SavedState(AbsSavedState.EMPTY_STATE);
+
+        savedState.mHasCropBounds = true;
+        savedState.mLeft = left;
+        savedState.mTop = top;
+        savedState.mRight = right;
+        savedState.mBottom = bottom;
+
+        return savedState;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.codevblocks.android.cropmarker;
+
+import android.app.Activity;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks the fromUser flag of the crop changes coalesced by the interval dispatch. The crop marker
+ * is attached to a window, for the delayed dispatch to run.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropMarkerCropChangeTest {
+
+    private static final int INTERVAL = 500;
+
+    private CropMarker mCropMarker;
+    private final List<Boolean> mFromUser = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+
+        mCropMarker = new CropMarker(activity);
+        mCropMarker.setMinSize(50);
+        mCropMarker.setTouchThreshold(20);
+
+        activity.setContentView(mCropMarker);
+        idle(0);
+
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+
+        mCropMarker.setCropChangeDispatch(CropMarker.CROP_CHANGE_DISPATCH_INTERVAL);
+        mCropMarker.setCropChangeInterval(INTERVAL);
+        mCropMarker.setOnCropChangeListener(new CropMarker.OnCropChangeListener() {
+            @Override
+            public void onCropChangeStarted(final CropMarker cropMarker, final RectF cropBounds) {
+            }
+
+            @Override
+            public void onCropChanged(final CropMarker cropMarker, final RectF cropBounds, final boolean fromUser) {
+                mFromUser.add(fromUser);
+            }
+
+            @Override
+            public void onCropChangeFinished(final CropMarker cropMarker, final RectF cropBounds) {
+            }
+        }, new RectF());
+
+        // Starts a new interval
+        idle(INTERVAL);
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+        mFromUser.clear();
+    }
+
+    @Test
+    public void coalescedChangesAreFromUserIfAnyIs() {
+        dragBottomRightCorner();
+        idle(20);
+
+        mCropMarker.setCropBounds(new RectF(0.2F, 0.2F, 0.6F, 0.6F));
+        idle(INTERVAL);
+
+        assertEquals(1, mFromUser.size());
+        assertEquals(true, mFromUser.get(0));
+    }
+
+    @Test
+    public void fromUserIsResetOnceDispatched() {
+        dragBottomRightCorner();
+        idle(INTERVAL);
+
+        mCropMarker.setCropBounds(new RectF(0.2F, 0.2F, 0.6F, 0.6F));
+        idle(INTERVAL);
+
+        assertEquals(2, mFromUser.size());
+        assertEquals(true, mFromUser.get(0));
+        assertEquals(false, mFromUser.get(1));
+    }
+
+    @Test
+    public void pendingChangeIsFlushedWhenTheDispatchChanges() {
+        dragBottomRightCorner();
+        idle(20);
+
+        mCropMarker.setCropBounds(new RectF(0.2F, 0.2F, 0.6F, 0.6F));
+        mCropMarker.setCropChangeDispatch(CropMarker.CROP_CHANGE_DISPATCH_EVENT);
+
+        assertEquals(1, mFromUser.size());
+        assertEquals(true, mFromUser.get(0));
+
+        // The interval callback was cancelled
+        idle(INTERVAL);
+
+        assertEquals(1, mFromUser.size());
+    }
+
+    private void dragBottomRightCorner() {
+        final RectF marker = mCropMarker.getMarker(new RectF());
+
+        touch(MotionEvent.ACTION_DOWN, marker.right, marker.bottom);
+        touch(MotionEvent.ACTION_MOVE, marker.right + 20F, marker.bottom + 20F);
+    }
+
+    private void touch(final int action, final float x, final float y) {
+        final long time = SystemClock.uptimeMillis();
+        final MotionEvent event = MotionEvent.obtain(time, time, action, x, y, 0);
+
+        mCropMarker.onTouchEvent(event);
+        event.recycle();
+    }
+
+    private static void idle(final long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.RectF;
+import android.os.Looper;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a smoothed or predicted drag settles on the lift-off point once released.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropMarkerDragTest {
+
+    private static final int SIZE = 1000;
+
+    private CropMarker mCropMarker;
+    private long mDownTime;
+
+    @Before
+    public void setUp() {
+        mCropMarker = new CropMarker(RuntimeEnvironment.getApplication());
+        mCropMarker.setMinSize(50);
+        mCropMarker.setTouchThreshold(20);
+
+        mCropMarker.layout(0, 0, SIZE, SIZE);
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+    }
+
+    @Test
+    public void predictedDragSettlesOnLiftOffPoint() {
+        mCropMarker.setDragSmoothing(CropMarker.DRAG_SMOOTHING_PREDICT);
+
+        drag();
+
+        // The prediction extrapolates the drag past the finger
+        assertTrue(mCropMarker.getMarker(new RectF()).right > 560F);
+
+        touch(MotionEvent.ACTION_UP, 48, 560F, 560F);
+
+        assertEquals(new RectF(100F, 100F, 560F, 560F), mCropMarker.getMarker(new RectF()));
+    }
+
+    @Test
+    public void smoothedDragSettlesOnLiftOffPoint() {
+        mCropMarker.setDragSmoothing(CropMarker.DRAG_SMOOTHING_SMOOTH);
+
+        drag();
+
+        // The smoothing lags behind the finger
+        assertTrue(mCropMarker.getMarker(new RectF()).right < 560F);
+
+        touch(MotionEvent.ACTION_UP, 48, 560F, 560F);
+
+        assertEquals(new RectF(100F, 100F, 560F, 560F), mCropMarker.getMarker(new RectF()));
+    }
+
+    /**
+     * Drags the bottom right corner from (500, 500) to (560, 560), letting every frame run.
+     */
+    private void drag() {
+        touch(MotionEvent.ACTION_DOWN, 0, 500F, 500F);
+
+        for (int i = 1; i <= 3; ++i) {
+            touch(MotionEvent.ACTION_MOVE, 8 * i, 500F + 20F * i, 500F + 20F * i);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(20));
+        }
+    }
+
+    private void touch(final int action, final long time, final float x, final float y) {
+        if (action == MotionEvent.ACTION_DOWN) {
+            mDownTime = 1000L;
+        }
+
+        final MotionEvent event = MotionEvent.obtain(mDownTime, mDownTime + time, action, x, y, 0);
+
+        mCropMarker.onTouchEvent(event);
+        event.recycle();
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.codevblocks.android.cropmarker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a drag only invalidates the union of the previously drawn & the new marker
+ * rectangles, inflated by the extent of the stroke & the touch handles.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropMarkerInvalidateTest {
+
+    private static final int SIZE = 1000;
+
+    private RecordingCropMarker mCropMarker;
+
+    @Before
+    public void setUp() {
+        mCropMarker = new RecordingCropMarker(RuntimeEnvironment.getApplication());
+        mCropMarker.setMinSize(50);
+        mCropMarker.setTouchThreshold(20);
+        mCropMarker.setMarkerStrokeWidth(4);
+        mCropMarker.setTouchHandleStrokeWidth(2);
+        mCropMarker.setTouchHandleStrokeLength(20);
+        mCropMarker.setTouchHandleStrokeInset(0);
+
+        mCropMarker.layout(0, 0, SIZE, SIZE);
+        mCropMarker.setCropBounds(new RectF(0.1F, 0.1F, 0.5F, 0.5F));
+        draw();
+
+        assertEquals(new RectF(100, 100, 500, 500), mCropMarker.getMarker(new RectF()));
+    }
+
+    @Test
+    public void dragInvalidatesMarkerUnionInflatedByTouchHandleStrokes() {
+        drag(500, 500, 600, 650);
+
+        // Stroke extent: max(marker stroke width 4, stroke length 20 + stroke width 2 + inset 0)
+        assertInvalidated(new Rect(100 - 22, 100 - 22, 600 + 22, 650 + 22));
+    }
+
+    @Test
+    public void dragInvalidatesMarkerUnionInflatedByTouchHandleDrawable() {
+        final GradientDrawable drawable = new GradientDrawable();
+        drawable.setSize(40, 40);
+
+        mCropMarker.setTouchHandleDrawable(drawable);
+        // As if the drawable bounds had not been set yet
+        drawable.setBounds(0, 0, 0, 0);
+        draw();
+
+        drag(500, 500, 450, 420);
+
+        assertInvalidated(new Rect(100 - 40, 100 - 40, 500 + 40, 500 + 40));
+    }
+
+    @Test
+    public void consecutiveMovesInvalidateFromLastDrawnMarker() {
+        drag(500, 500, 600, 650);
+        draw();
+
+        move(700, 700);
+
+        assertInvalidated(new Rect(100 - 22, 100 - 22, 700 + 22, 700 + 22));
+    }
+
+    private void drag(final float downX, final float downY, final float x, final float y) {
+        touch(MotionEvent.ACTION_DOWN, downX, downY);
+        move(x, y);
+    }
+
+    private void move(final float x, final float y) {
+        mCropMarker.mInvalidatedRects.clear();
+
+        touch(MotionEvent.ACTION_MOVE, x, y);
+
+        // The move is applied on the next frame
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(20));
+    }
+
+    private void touch(final int action, final float x, final float y) {
+        final long time = SystemClock.uptimeMillis();
+        final MotionEvent event = MotionEvent.obtain(time, time, action, x, y, 0);
+
+        mCropMarker.onTouchEvent(event);
+        event.recycle();
+    }
+
+    private void draw() {
+        mCropMarker.draw(new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888)));
+    }
+
+    private void assertInvalidated(final Rect expected) {
+        assertFalse("No partial invalidation", mCropMarker.mInvalidatedRects.isEmpty());
+        assertEquals(expected, mCropMarker.mInvalidatedRects.get(mCropMarker.mInvalidatedRects.size() - 1));
+    }
+
+    private static final class RecordingCropMarker extends CropMarker {
+
+        final List<Rect> mInvalidatedRects = new ArrayList<>();
+
+        RecordingCropMarker(final Context context) {
+            super(context);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void invalidate(final Rect dirty) {
+            mInvalidatedRects.add(new Rect(dirty));
+            super.invalidate(dirty);
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.codevblocks.android.cropmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmapRegionDecoder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Crops a large synthetic image and checks that the peak bitmap memory stays bounded by a single
+ * band: the band bitmap is allocated once, every band is decoded into it and no larger bitmap is
+ * ever created.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = StreamingCropperTest.ReusingBitmapRegionDecoder.class)
+public class StreamingCropperTest {
+
+    // 24 MP, ~92 MB once decoded
+    private static final int WIDTH = 6000;
+    private static final int HEIGHT = 4000;
+
+    private static final int BAND_HEIGHT = 256;
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        ReusingBitmapRegionDecoder.sDecodedBitmaps.clear();
+
+        mFile = mTemporaryFolder.newFile("large.png");
+
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(mFile))) {
+            final PngWriter pngWriter = new PngWriter(outputStream, WIDTH, HEIGHT);
+            final byte[] row = new byte[4 * WIDTH];
+
+            for (int y = 0; y < HEIGHT; ++y) {
+                pngWriter.writeRow(row, 0, row.length);
+            }
+
+            pngWriter.finish();
+        }
+    }
+
+    @Test
+    public void pooledCropAllocatesSingleBand() throws IOException {
+        final RectF cropBounds = new RectF(0.1F, 0.05F, 0.9F, 0.95F);
+        final long bandBytes = 4L * (int) (0.8F * WIDTH) * BAND_HEIGHT;
+
+        final BitmapPool bitmapPool = new BitmapPool(bandBytes);
+        final CountingOutputStream outputStream = new CountingOutputStream();
+
+        final Rect region = StreamingCropper.crop(CropSource.fromFile(mFile), cropBounds, CropMarker.MASK_RECTANGLE,
+                BAND_HEIGHT, StreamingCropper.FORMAT_RGBA, outputStream, bitmapPool);
+
+        assertEquals(new Rect(600, 200, 5400, 3800), region);
+        assertEquals(4L * region.width() * region.height(), outputStream.mCount);
+
+        // The band bitmap was created once, then returned to the pool
+        assertEquals(1L, bitmapPool.getMissCount());
+        assertEquals(bandBytes, bitmapPool.getBytes());
+
+        final Bitmap band = bitmapPool.get(region.width(), BAND_HEIGHT, Bitmap.Config.ARGB_8888);
+
+        assertEquals(bandBytes, band.getAllocationByteCount());
+        assertBandsDecodedInto(band, region);
+    }
+
+    @Test
+    public void unpooledCropAllocatesSingleBand() throws IOException {
+        final RectF cropBounds = new RectF(0F, 0F, 1F, 1F);
+        final CountingOutputStream outputStream = new CountingOutputStream();
+
+        final Rect region = StreamingCropper.crop(CropSource.fromFile(mFile), cropBounds, CropMarker.MASK_OVAL,
+                BAND_HEIGHT, StreamingCropper.FORMAT_PNG, outputStream, null);
+
+        assertEquals(new Rect(0, 0, WIDTH, HEIGHT), region);
+        assertTrue(outputStream.mCount > 0);
+
+        final Bitmap band = ReusingBitmapRegionDecoder.sDecodedBitmaps.get(0);
+
+        assertEquals(4L * WIDTH * BAND_HEIGHT, band.getAllocationByteCount());
+        assertTrue("Band bitmap not recycled", band.isRecycled());
+        assertBandsDecodedInto(band, region);
+    }
+
+    private static void assertBandsDecodedInto(final Bitmap band, final Rect region) {
+        final List<Bitmap> decodedBitmaps = ReusingBitmapRegionDecoder.sDecodedBitmaps;
+
+        assertEquals((region.height() + BAND_HEIGHT - 1) / BAND_HEIGHT, decodedBitmaps.size());
+
+        for (final Bitmap decoded : decodedBitmaps) {
+            assertSame(band, decoded);
+        }
+    }
+
+    /**
+     * Decodes into {@link BitmapFactory.Options#inBitmap} when it is large enough, as the platform
+     * decoder does, and records the decoded bitmaps.
+     */
+    @Implements(BitmapRegionDecoder.class)
+    public static class ReusingBitmapRegionDecoder extends ShadowBitmapRegionDecoder {
+
+        static final List<Bitmap> sDecodedBitmaps = new ArrayList<>();
+
+        @Override
+        @Implementation
+        protected Bitmap decodeRegion(final Rect rect, final BitmapFactory.Options options) {
+            final Bitmap inBitmap = options != null ? options.inBitmap : null;
+            final Bitmap decoded;
+
+            if (inBitmap != null && inBitmap.getWidth() >= rect.width() && inBitmap.getHeight() >= rect.height()) {
+                decoded = inBitmap;
+            } else {
+                decoded = super.decodeRegion(rect, options);
+            }
+
+            assertFalse(decoded.isRecycled());
+            sDecodedBitmaps.add(decoded);
+
+            return decoded;
+        }
+
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long mCount;
+
+        @Override
+        public void write(final int b) {
+            ++mCount;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            mCount += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.codevblocks.android.cropmarker.macrobenchmark;
+
+import android.content.Intent;
+import android.graphics.Rect;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+
+/**
+ * Drags the crop marker of the sample app in every configuration, with hardware rendering (direct
+ * or cached decoration) and software rendering, and collects the frame timings ({@link FrameTimingMetric} reports the P50, P90, P95
+ * and P99 frame durations & overruns).
+ */
+@RunWith(Parameterized.class)
+public class CropMarkerDragBenchmark {
+
+    private static final String PACKAGE_NAME = "com.codevblocks.android.cropmarker.sample";
+    private static final String ACTIVITY_NAME = PACKAGE_NAME + ".MainActivity";
+
+    private static final int ITERATIONS = 10;
+    private static final int DRAG_STEPS = 60;
+    private static final long TIMEOUT_MS = 5000L;
+
+    @Parameterized.Parameters(name = "{0},software={1},cached={2}")
+    public static List<Object[]> parameters() {
+        final String[] configs = { "rectangle", "oval", "dashed", "grid", "drawable" };
+        final List<Object[]> parameters = new ArrayList<>();
+
+        for (final String config : configs) {
+            parameters.add(new Object[] { config, false, false });
+            parameters.add(new Object[] { config, false, true });
+            parameters.add(new Object[] { config, true, false });
+        }
+
+        return parameters;
+    }
+
+    @Rule
+    public final MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    private final String mConfig;
+    private final boolean mSoftware;
+    private final boolean mCached;
+
+    public CropMarkerDragBenchmark(final String config, final boolean software, final boolean cached) {
+        this.mConfig = config;
+        this.mSoftware = software;
+        this.mCached = cached;
+    }
+
+    @Test
+    public void drag() {
+        final List<Metric> metrics = Collections.<Metric>singletonList(new FrameTimingMetric());
+
+        mBenchmarkRule.measureRepeated(PACKAGE_NAME, metrics, new CompilationMode.Partial(), StartupMode.WARM, ITERATIONS,
+                new Function1<MacrobenchmarkScope, Unit>() {
+                    @Override
+                    public Unit invoke(final MacrobenchmarkScope scope) {
+                        final Intent intent = new Intent();
+                        intent.setClassName(PACKAGE_NAME, ACTIVITY_NAME);
+                        intent.putExtra("config", mConfig);
+                        intent.putExtra("software", mSoftware);
+                        intent.putExtra("cached", mCached);
+
+                        scope.startActivityAndWait(intent);
+                        return Unit.INSTANCE;
+                    }
+                },
+                new Function1<MacrobenchmarkScope, Unit>() {
+                    @Override
+                    public Unit invoke(final MacrobenchmarkScope scope) {
+                        drag(scope.getDevice());
+                        return Unit.INSTANCE;
+                    }
+                });
+    }
+
+    /**
+     * Resizes the marker from its bottom right corner to the view corner and back, then moves it
+     * to the view center and back.
+     */
+    private static void drag(final UiDevice device) {
+        final UiObject2 cropMarker = device.wait(Until.findObject(By.res(PACKAGE_NAME, "crop_marker")), TIMEOUT_MS);
+        final Rect bounds = cropMarker.getVisibleBounds();
+
+        // The marker initially spans [48dp, 96dp, 288dp, 416dp] (see activity_main.xml)
+        final float density = InstrumentationRegistry.getInstrumentation().getContext().getResources().getDisplayMetrics().density;
+        final int right = bounds.left + Math.round(288 * density);
+        final int bottom = bounds.top + Math.round(416 * density);
+        final int centerX = bounds.left + Math.round(168 * density);
+        final int centerY = bounds.top + Math.round(256 * density);
+
+        device.drag(right, bottom, bounds.right - 1, bounds.bottom - 1, DRAG_STEPS);
+        device.drag(bounds.right - 1, bounds.bottom - 1, right, bottom, DRAG_STEPS);
+        device.drag(centerX, centerY, bounds.centerX(), bounds.centerY(), DRAG_STEPS);
+        device.drag(bounds.centerX(), bounds.centerY(), centerX, centerY, DRAG_STEPS);
+        device.waitForIdle();
+    }
+
+}
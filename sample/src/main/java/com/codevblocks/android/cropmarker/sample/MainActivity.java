@@ -0,0 +1,112 @@
+package com.codevblocks.android.cropmarker.sample;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.os.Bundle;
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.ImageView;
+
+import com.codevblocks.android.cropmarker.CropMarker;
+
+/**
+ * Hosts a {@link CropMarker} over a large image, in the configuration given by the
+ * {@link #EXTRA_CONFIG} extra. Also used by the macrobenchmark module to measure drags.
+ */
+public class MainActivity extends Activity {
+
+    public static final String EXTRA_CONFIG = "config";
+    public static final String EXTRA_SOFTWARE = "software";
+    public static final String EXTRA_CACHED = "cached";
+
+    public static final String CONFIG_RECTANGLE = "rectangle";
+    public static final String CONFIG_OVAL = "oval";
+    public static final String CONFIG_DASHED = "dashed";
+    public static final String CONFIG_GRID = "grid";
+    public static final String CONFIG_DRAWABLE = "drawable";
+
+    private static final int IMAGE_WIDTH = 4000;
+    private static final int IMAGE_HEIGHT = 3000;
+
+    @Override
+    protected void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        setContentView(R.layout.activity_main);
+
+        final ImageView image = findViewById(R.id.image);
+        final CropMarker cropMarker = findViewById(R.id.crop_marker);
+
+        image.setImageBitmap(createImage(IMAGE_WIDTH, IMAGE_HEIGHT));
+
+        final String config = getIntent().getStringExtra(EXTRA_CONFIG);
+        configure(cropMarker, config != null ? config : CONFIG_RECTANGLE);
+
+        if (getIntent().getBooleanExtra(EXTRA_CACHED, false)) {
+            cropMarker.setRenderMode(CropMarker.RENDER_MODE_CACHED);
+        }
+
+        if (getIntent().getBooleanExtra(EXTRA_SOFTWARE, false)) {
+            image.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+            cropMarker.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+        }
+    }
+
+    private void configure(final CropMarker cropMarker, final String config) {
+        switch (config) {
+            case CONFIG_OVAL:
+                cropMarker.setMask(CropMarker.MASK_OVAL);
+                break;
+            case CONFIG_DASHED:
+                cropMarker.setMarkerStrokeWidth(dp(2));
+                cropMarker.setMarkerStrokeDash(dp(4), dp(4));
+                cropMarker.setGridLinesDash(dp(2), dp(2));
+                cropMarker.setGridLinesBehavior(CropMarker.GRID_LINES_BEHAVIOR_ALWAYS);
+                break;
+            case CONFIG_GRID:
+                cropMarker.setGridLines(24);
+                cropMarker.setGridLinesBehavior(CropMarker.GRID_LINES_BEHAVIOR_ALWAYS);
+                break;
+            case CONFIG_DRAWABLE:
+                cropMarker.setTouchHandleDrawable(getResources().getDrawable(R.drawable.touch_handle));
+                cropMarker.setTouchHandleDrawableAnchorX(0.5F);
+                cropMarker.setTouchHandleDrawableAnchorY(0.5F);
+                break;
+            case CONFIG_RECTANGLE:
+            default:
+                cropMarker.setMask(CropMarker.MASK_RECTANGLE);
+                break;
+        }
+    }
+
+    private int dp(final int value) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+
+    /**
+     * @return a large synthetic image, so that the sample does not ship a multi-megabyte asset
+     */
+    private static Bitmap createImage(final int width, final int height) {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        paint.setShader(new LinearGradient(0, 0, width, height, 0xFF1E3C72, 0xFFE96443, Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, width, height, paint);
+
+        paint.setShader(null);
+        paint.setColor(0x40FFFFFF);
+        paint.setStrokeWidth(4F);
+
+        for (int i = 0; i < width + height; i += 100) {
+            canvas.drawLine(i, 0, i - height, height, paint);
+        }
+
+        return bitmap;
+    }
+
+}